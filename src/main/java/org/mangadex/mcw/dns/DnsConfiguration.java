@@ -2,7 +2,12 @@ package org.mangadex.mcw.dns;
 
 import static java.lang.Integer.parseInt;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import org.slf4j.Logger;
@@ -17,6 +22,15 @@ import org.xbill.DNS.SimpleResolver;
 
 import org.mangadex.mcw.dns.DnsProperties.DnsDiscovery;
 import org.mangadex.mcw.dns.DnsProperties.DnsOptions;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.cache.DnsCache;
+import org.mangadex.mcw.dns.cache.DnsCacheSnapshot;
+import org.mangadex.mcw.dns.transport.HedgingMetrics;
+import org.mangadex.mcw.dns.transport.HedgingResolver;
+import org.mangadex.mcw.dns.transport.HedgingResolver.Nameserver;
+import org.mangadex.mcw.dns.transport.Nameservers;
+import org.mangadex.mcw.dns.transport.PipelinedTcpResolver;
+import org.mangadex.mcw.dns.transport.TcpTransportMetrics;
 
 @Configuration(proxyBeanMethods = false)
 @ConfigurationPropertiesScan
@@ -24,43 +38,90 @@ public class DnsConfiguration {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DnsConfiguration.class);
 
+    // nameservers are a bean of their own, so that their resolvers are closed on shutdown, once the resolver querying them is destroyed
     @Bean
-    public Resolver resolver(DnsProperties dnsProperties) {
-        ExtendedResolver resolver;
-
+    public Nameservers nameservers(DnsProperties dnsProperties, TcpTransportMetrics tcpTransportMetrics) {
+        List<InetSocketAddress> servers;
         if (dnsProperties.discovery() == DnsDiscovery.STATIC) {
             Objects.requireNonNull(dnsProperties.nameservers(), "Static discovery requires non-null nameservers");
             LOGGER.info("Using static DNS servers: {}", dnsProperties.nameservers());
-            var srs = dnsProperties.nameservers().stream().map(DnsConfiguration::hostportResolver).toList();
-            resolver = new ExtendedResolver(srs.toArray(new Resolver[0]));
+            servers = dnsProperties.nameservers().stream().map(DnsConfiguration::hostport).toList();
         } else {
-            var servers = ResolverConfig.getCurrentConfig().servers();
+            servers = ResolverConfig.getCurrentConfig().servers();
             LOGGER.info("Using discovered DNS servers: {}", servers);
-            resolver = new ExtendedResolver();
-            servers.forEach(addr -> resolver.addResolver(new SimpleResolver(addr)));
-            return resolver;
         }
 
-        if (!dnsProperties.options().isEmpty()) {
-            LOGGER.info("Using DNS options: {}", dnsProperties.options());
-            if (dnsProperties.options().contains(DnsOptions.FORCE_TCP)) {
-                resolver.setTCP(true);
+        var nameservers = new ArrayList<Nameserver>(servers.size());
+        for (var server : servers) {
+            var name = server.getAddress().getHostAddress() + ":" + server.getPort();
+            if (dnsProperties.options().contains(DnsOptions.PIPELINED_TCP)) {
+                var pipelined = new PipelinedTcpResolver(server.getAddress(), dnsProperties.tcpIdleTimeout(), tcpTransportMetrics);
+                pipelined.setPort(server.getPort());
+                nameservers.add(new Nameserver(name, pipelined));
+            } else {
+                nameservers.add(new Nameserver(name, new SimpleResolver(server)));
             }
         }
+        return new Nameservers(List.copyOf(nameservers));
+    }
+
+    @Bean
+    public Resolver resolver(DnsProperties dnsProperties, Nameservers nameservers, HedgingMetrics hedgingMetrics) {
+        var options = dnsProperties.options();
+        if (!options.isEmpty()) {
+            LOGGER.info("Using DNS options: {}", options);
+        }
+
+        Resolver resolver;
+        if (dnsProperties.hedging().enabled()) {
+            LOGGER.info("Ranking DNS servers by latency and hedging slow queries: {}", dnsProperties.hedging());
+            resolver = new HedgingResolver(Clock.systemUTC(), nameservers.all(), dnsProperties.hedging(), hedgingMetrics);
+        } else {
+            resolver = new ExtendedResolver(nameservers.all().stream().map(Nameserver::resolver).toArray(Resolver[]::new));
+        }
+        if (options.contains(DnsOptions.FORCE_TCP)) {
+            resolver.setTCP(true);
+        }
 
         return resolver;
     }
 
-    private static SimpleResolver hostportResolver(String hostport) {
+    @Bean
+    public TcpTransportMetrics tcpTransportMetrics() {
+        return new TcpTransportMetrics();
+    }
+
+    @Bean
+    public HedgingMetrics hedgingMetrics() {
+        return new HedgingMetrics();
+    }
+
+    @Bean
+    public DnsCache dnsCache(DnsProperties dnsProperties) {
+        return new DnsCache(Clock.systemUTC(), dnsProperties.cache());
+    }
+
+    @Bean
+    public QueryPlanner queryPlanner(DnsProperties dnsProperties) {
+        var system = ResolverConfig.getCurrentConfig();
+        return new QueryPlanner(Clock.systemUTC(), dnsProperties.search(), system.searchPath(), system.ndots());
+    }
+
+    @Bean
+    public DnsCacheSnapshot dnsCacheSnapshot(DnsCache dnsCache, DnsProperties dnsProperties) {
+        var settings = dnsProperties.cache().enabled() ? dnsProperties.cache().snapshot() : SnapshotSettings.DISABLED;
+        var snapshot = new DnsCacheSnapshot(Clock.systemUTC(), dnsCache, settings);
+        snapshot.load();
+        return snapshot;
+    }
+
+    private static InetSocketAddress hostport(String hostport) {
         try {
             var parts = hostport.split(":");
-            var sr = new SimpleResolver(parts[0]);
-            sr.setPort(parseInt(parts[1]));
-            return sr;
+            return new InetSocketAddress(InetAddress.getByName(parts[0]), parseInt(parts[1]));
         } catch (UnknownHostException e) {
             throw new RuntimeException(e);
         }
-
     }
 
 }
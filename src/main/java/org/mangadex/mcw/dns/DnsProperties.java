@@ -1,14 +1,33 @@
 package org.mangadex.mcw.dns;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import jakarta.annotation.Nullable;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 
 import org.hibernate.validator.constraints.UniqueElements;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+/**
+ * DNS resolution settings
+ *
+ * @param maxInFlight    maximum number of upstream lookups in flight at once across the whole process, further ones are queued
+ * @param timeout        maximum time to wait for a single upstream lookup, after it left the queue
+ * @param cache          settings of the process-wide answer cache shared by all watches
+ * @param search         settings for expanding names which are not fully qualified with search domains
+ * @param srvGlue        whether SRV lookups keep the address records of their targets given in the additional section, so that
+ *                       renders do not need to look each target up on its own
+ * @param tcpIdleTimeout how long persistent connections to nameservers are kept open without any query outstanding, with
+ *                       {@link DnsOptions#PIPELINED_TCP}
+ * @param hedging        settings for ranking nameservers by latency and hedging slow queries to the next best one
+ */
 @Validated
 @ConfigurationProperties(prefix = "org.mangadex.mcw.dns")
 public record DnsProperties(
@@ -21,7 +40,30 @@ public record DnsProperties(
     List<@NotNull @Pattern(regexp = "^.+:\\d+") String> nameservers,
 
     @UniqueElements
-    List<@NotNull DnsOptions> options
+    List<@NotNull DnsOptions> options,
+
+    @Positive
+    int maxInFlight,
+
+    @NotNull
+    Duration timeout,
+
+    @NotNull
+    @Validated
+    DnsCacheSettings cache,
+
+    @NotNull
+    @Validated
+    SearchSettings search,
+
+    boolean srvGlue,
+
+    @NotNull
+    Duration tcpIdleTimeout,
+
+    @NotNull
+    @Validated
+    HedgingSettings hedging
 
 ) {
 
@@ -31,7 +73,89 @@ public record DnsProperties(
     }
 
     public enum DnsOptions {
-        FORCE_TCP
+        FORCE_TCP,
+        /**
+         * Queries each nameserver over one persistent TCP connection which concurrent queries are pipelined on, rather than over a new
+         * connection per query as {@link #FORCE_TCP} does
+         */
+        PIPELINED_TCP,
+    }
+
+    /**
+     * @param enabled    whether to cache answers for their TTL and coalesce concurrent lookups of the same name
+     * @param serveStale settings for serving expired answers when upstream resolution fails
+     * @param snapshot   settings for persisting cached answers across restarts
+     */
+    @Validated
+    public record DnsCacheSettings(
+        boolean enabled,
+        @NotNull @Validated ServeStaleSettings serveStale,
+        @NotNull @Validated SnapshotSettings snapshot
+    ) { }
+
+    /**
+     * @param enabled    whether to serve expired answers when upstream resolution fails (RFC 8767)
+     * @param ttl        TTL given to the records of stale answers
+     * @param maxStale   how long past its expiry an answer may still be served
+     * @param minBackoff delay before the first background retry of a failing name
+     * @param maxBackoff upper bound of the exponentially growing delay between background retries of a failing name
+     */
+    @Validated
+    public record ServeStaleSettings(
+        boolean enabled,
+        @NotNull Duration ttl,
+        @NotNull Duration maxStale,
+        @NotNull Duration minBackoff,
+        @NotNull Duration maxBackoff
+    ) { }
+
+    /**
+     * @param enabled whether to persist cached answers to a local file after renders, and restore them on startup, so that the first
+     *                renders after a restart do not wait on upstream resolution
+     * @param path    file to persist cached answers to, which should outlive restarts (ie on a persistent volume)
+     * @param maxAge  how long past their expiry restored answers may still be served, while they are refreshed in the background
+     */
+    @Validated
+    public record SnapshotSettings(
+        boolean enabled,
+        @Nullable Path path,
+        @NotNull Duration maxAge
+    ) {
+
+        public static final SnapshotSettings DISABLED = new SnapshotSettings(false, null, Duration.ZERO);
+
     }
 
+    /**
+     * @param enabled        whether names which are not fully qualified (ie without a trailing dot) are expanded with search domains as the
+     *                       system resolver would, rather than looked up as they are
+     * @param domains        search domains to expand names with, or null for those of the system (ie resolv.conf)
+     * @param ndots          number of dots from which names are looked up as they are before being expanded, or null for that of the system
+     * @param maxNegativeTtl upper bound of how long expansions which do not exist are remembered for, which is otherwise their SOA minimum
+     */
+    @Validated
+    public record SearchSettings(
+        boolean enabled,
+        @Nullable List<@NotNull String> domains,
+        @Nullable @PositiveOrZero Integer ndots,
+        @NotNull Duration maxNegativeTtl
+    ) { }
+
+    /**
+     * @param enabled     whether queries are sent to the nameserver expected to answer fastest and hedged to the next best one when slow,
+     *                    rather than spread across nameservers in turn
+     * @param percentile  percentile of the recent latencies of a nameserver past which its queries are hedged
+     * @param minDelay    minimum delay before hedging a query, which is also that of nameservers without recent answers
+     * @param maxFailures number of failures in a row after which a nameserver is ejected
+     * @param ejection    how long ejected nameservers are not queried for, unless all of them are ejected
+     */
+    @Validated
+    public record HedgingSettings(
+        boolean enabled,
+        @DecimalMin("0.5") @DecimalMax("1.0") double percentile,
+        @NotNull Duration minDelay,
+        @Positive int maxFailures,
+        @NotNull Duration ejection
+    ) { }
+
 }
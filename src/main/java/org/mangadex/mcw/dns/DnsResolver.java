@@ -1,21 +1,36 @@
 package org.mangadex.mcw.dns;
 
-import java.util.Comparator;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.Type;
+import org.xbill.DNS.lookup.LookupFailedException;
 import org.xbill.DNS.lookup.LookupResult;
 import org.xbill.DNS.lookup.LookupSession;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.NoSuchRRSetException;
+import org.xbill.DNS.lookup.ServerFailedException;
 
+import org.mangadex.mcw.dns.cache.DnsCache;
 import org.mangadex.mcw.dns.request.DnsRequest;
 import org.mangadex.mcw.dns.request.RequestType;
 import org.mangadex.mcw.dns.response.DnsResolution;
@@ -26,40 +41,128 @@ import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
 public class DnsResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DnsResolver.class);
-    private static final ExecutorService DNS_THREADS = Executors.newWorkStealingPool(1);
-    private static final Comparator<Record> SORT_BY_NAME = Comparator.comparing(Record::getName);
+    private static final int MAX_CNAME_CHAIN = 16;
 
+    private final Resolver resolver;
     private final LookupSession lookupSession;
+    private final InFlightLimiter limiter;
+    private final long timeoutMillis;
+    private final DnsCache cache;
+    private final QueryPlanner planner;
+    private final boolean srvGlue;
 
-    public DnsResolver(Resolver resolver) {
-        this.lookupSession = LookupSession.defaultBuilder().resolver(resolver).build();
+    public DnsResolver(Resolver resolver, DnsProperties dnsProperties, DnsCache cache, QueryPlanner planner) {
+        this.resolver = resolver;
+        // names are always looked up fully qualified, as search domains are expanded by the planner if at all
+        this.lookupSession = LookupSession.defaultBuilder().resolver(resolver).clearSearchPath().build();
+        this.limiter = new InFlightLimiter(dnsProperties.maxInFlight());
+        this.timeoutMillis = dnsProperties.timeout().toMillis();
+        this.cache = dnsProperties.cache().enabled() ? cache : null;
+        this.planner = planner;
+        this.srvGlue = dnsProperties.srvGlue();
     }
 
+    /**
+     * Blocking variant of {@link #resolveAsync(DnsRequest)}, for callers that have nothing better to do while waiting.
+     */
     public DnsResolution resolve(DnsRequest request) {
-        var result = DNS_THREADS.submit(() -> resolveInternal(request));
-        try {
-            return result.get();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-            throw new RuntimeException(e.getCause());
+        return resolveAsync(request).toCompletableFuture().join();
+    }
+
+    /**
+     * Resolves a request without blocking the calling thread. The returned stage never completes exceptionally, failures (including
+     * timeouts) are reported as {@link DnsResolutionFailure} instead.
+     */
+    public CompletionStage<DnsResolution> resolveAsync(DnsRequest request) {
+        if (planner.plans(request)) {
+            return planner
+                .plan(request, this::send)
+                .thenCompose(planned -> resolvePlanned(new DnsRequest(request.type(), planned.qname().toString()), planned.answer()))
+                .exceptionally(DnsResolver::failure)
+                .thenApply(resolution -> {
+                    // the name planned may not exist anymore, or not have records anymore, in which case another expansion may
+                    if (resolution instanceof DnsResolutionFailure(var cause)
+                        && (cause instanceof NoSuchDomainException || cause instanceof NoSuchRRSetException)) {
+                        planner.forget(request);
+                    }
+                    return resolution;
+                });
+        }
+        if (cache != null) {
+            return cache.get(request, this::resolveUpstream);
+        }
+        return resolveUpstream(request);
+    }
+
+    /**
+     * Resolves a request as planned, from the answer to its probe if it was just probed, so that a name planned does not cost a second
+     * upstream query to look up. The answer goes through the cache as if it came from upstream, unless a fresher one is cached already.
+     */
+    private CompletionStage<DnsResolution> resolvePlanned(DnsRequest request, @Nullable Message answer) {
+        var probed = answer == null ? null : fromAnswer(request, answer);
+        if (probed == null) {
+            return resolveAsync(request);
+        }
+        if (cache != null) {
+            return cache.get(request, _ -> CompletableFuture.completedFuture(probed));
         }
+        return CompletableFuture.completedFuture(probed);
+    }
+
+    /**
+     * @return the records an answer holds for a request, as the lookup of the request would, or null if it does not hold them all (ie as
+     * its CNAME chain stops short of them)
+     */
+    @Nullable
+    private DnsResolution fromAnswer(DnsRequest request, Message answer) {
+        if (request.type() == RequestType.SRV && srvGlue) {
+            try {
+                return handleSRVWithGlue(request.qname(), answer);
+            } catch (LookupFailedException e) {
+                return null;
+            }
+        }
+
+        var owner = chainEnd(request.qname(), answer.getSection(Section.ANSWER));
+        List<Record> records = answer
+            .getSection(Section.ANSWER)
+            .stream()
+            .filter(r -> r.getType() == request.type().code && r.getName().equals(owner))
+            .toList();
+        return records.isEmpty() ? null : new DnsResolutionSuccess(records);
+    }
+
+    private CompletionStage<DnsResolution> resolveUpstream(DnsRequest request) {
+        return limiter
+            .submit(() -> lookup(request))
+            .exceptionally(DnsResolver::failure);
+    }
+
+    private CompletionStage<Message> send(Message query) {
+        return limiter.submit(() -> resolver.sendAsync(query).toCompletableFuture().orTimeout(timeoutMillis, MILLISECONDS));
+    }
+
+    private static DnsResolution failure(Throwable e) {
+        // unwrap completion exceptions
+        return e instanceof CompletionException ce
+            ? new DnsResolutionFailure(ce.getCause())
+            : new DnsResolutionFailure(e);
     }
 
-    private DnsResolution resolveInternal(DnsRequest request) {
-        var lookup = lookupSession.lookupAsync(request.qname(), request.type().code);
+    private CompletionStage<DnsResolution> lookup(DnsRequest request) {
+        if (request.type() == RequestType.SRV && srvGlue) {
+            return lookupSRVWithGlue(request);
+        }
+
+        var lookup = lookupSession
+            .lookupAsync(request.qname(), request.type().code)
+            .toCompletableFuture()
+            .orTimeout(timeoutMillis, MILLISECONDS);
 
-        var resolution = switch (request.type()) {
+        return switch (request.type()) {
             case RequestType.A -> lookup.thenApply(this::handleA);
             case RequestType.SRV -> lookup.thenApply(this::handleSRV);
         };
-
-        return resolution.exceptionally(
-            // unwrap completion exceptions
-            e -> e instanceof CompletionException ce
-                ? new DnsResolutionFailure(ce.getCause())
-                : new DnsResolutionFailure(e)
-        ).toCompletableFuture().join();
     }
 
     private DnsResolution handleA(LookupResult result) {
@@ -74,7 +177,6 @@ public class DnsResolver {
                 }
             })
             .filter(r -> r.getType() == Type.A)
-            .sorted(SORT_BY_NAME)
             .toList();
 
         return new DnsResolutionSuccess(aRecords);
@@ -92,10 +194,90 @@ public class DnsResolver {
                 }
             })
             .filter(r -> r.getType() == Type.SRV)
-            .sorted(SORT_BY_NAME)
             .toList();
 
         return new DnsResolutionSuccess(srvRecords);
     }
 
+    /**
+     * Looks SRV records up with a plain query rather than through the lookup session, which drops the additional section, so that the
+     * address records of their targets given as glue by the nameserver (ie for headless services) are kept, after the SRV records.
+     * <p>
+     * Should the name be an alias, the CNAME chain of the answer is followed to the name owning the SRV records. Answers which do not follow
+     * the chain to its end are looked up through the lookup session instead, which follows it with further queries.
+     */
+    private CompletionStage<DnsResolution> lookupSRVWithGlue(DnsRequest request) {
+        var qname = request.qname();
+        var query = Message.newQuery(Record.newRecord(qname, Type.SRV, DClass.IN));
+        return resolver
+            .sendAsync(query)
+            .toCompletableFuture()
+            .orTimeout(timeoutMillis, MILLISECONDS)
+            .thenCompose(response -> {
+                var glued = handleSRVWithGlue(qname, response);
+                if (glued != null) {
+                    return CompletableFuture.completedFuture(glued);
+                }
+
+                LOGGER.debug("Answer for SRV {} does not follow its CNAME chain to the end, looking it up without glue", qname);
+                return lookupSession
+                    .lookupAsync(qname, Type.SRV)
+                    .toCompletableFuture()
+                    .orTimeout(timeoutMillis, MILLISECONDS)
+                    .thenApply(this::handleSRV);
+            });
+    }
+
+    /**
+     * @return the SRV records owned by the name at the end of the CNAME chain of the answer, with glue, or null if the answer has none as
+     * its CNAME chain ends without them
+     */
+    private DnsResolution handleSRVWithGlue(Name qname, Message response) {
+        switch (response.getRcode()) {
+            case Rcode.NOERROR -> { }
+            case Rcode.NXDOMAIN -> throw new NoSuchDomainException(qname, Type.SRV);
+            case Rcode.SERVFAIL -> throw new ServerFailedException(qname, Type.SRV);
+            default -> throw new LookupFailedException("Unexpected response code " + Rcode.string(response.getRcode()), qname, Type.SRV);
+        }
+
+        var answers = response.getSection(Section.ANSWER);
+        var owner = chainEnd(qname, answers);
+        List<Record> srvRecords = answers.stream().filter(r -> r.getType() == Type.SRV && r.getName().equals(owner)).toList();
+        if (srvRecords.isEmpty()) {
+            if (!owner.equals(qname)) {
+                return null;
+            }
+            throw new NoSuchRRSetException(qname, Type.SRV);
+        }
+        var targets = srvRecords.stream().map(r -> ((SRVRecord) r).getTarget()).collect(Collectors.toSet());
+        var glue = response
+            .getSection(Section.ADDITIONAL)
+            .stream()
+            .filter(r -> r.getType() == Type.A && targets.contains(r.getName()))
+            .toList();
+        LOGGER.trace("+ SRV records {} with glue {}", srvRecords, glue);
+
+        var records = new ArrayList<Record>(srvRecords.size() + glue.size());
+        records.addAll(srvRecords);
+        records.addAll(glue);
+        return new DnsResolutionSuccess(records);
+    }
+
+    /**
+     * @return the name at the end of the CNAME chain of a name in the records of an answer, which is the name itself if it is no alias
+     */
+    private static Name chainEnd(Name qname, List<Record> answers) {
+        var owner = qname;
+        for (int hops = 0; hops < MAX_CNAME_CHAIN; hops++) {
+            var alias = owner;
+            var cname = answers.stream().filter(r -> r.getType() == Type.CNAME && r.getName().equals(alias)).findFirst();
+            if (cname.isEmpty()) {
+                break;
+            }
+            owner = ((CNAMERecord) cname.get()).getTarget();
+            LOGGER.trace("+ CNAME {} -> {}", alias, owner);
+        }
+        return owner;
+    }
+
 }
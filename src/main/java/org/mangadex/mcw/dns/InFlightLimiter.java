@@ -0,0 +1,82 @@
+package org.mangadex.mcw.dns;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous operations in flight at once, without parking any thread while waiting for a slot.
+ * <p>
+ * Operations over the limit are queued, and started in submission order as earlier ones complete.
+ */
+public final class InFlightLimiter {
+
+    private final int limit;
+
+    private final Queue<Runnable> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger drainers = new AtomicInteger();
+
+    public InFlightLimiter(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive, but was " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> operation) {
+        var result = new CompletableFuture<T>();
+        queued.add(() -> {
+            CompletionStage<T> stage;
+            try {
+                stage = operation.get();
+            } catch (Throwable t) {
+                stage = CompletableFuture.failedFuture(t);
+            }
+            stage.whenComplete((value, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        drain();
+        return result;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued.size();
+    }
+
+    /*
+     * Only one thread drains at a time, and operations completing synchronously just flag another pass
+     * rather than recursing into drain(), so that long queues of immediately-available results cannot blow the stack.
+     */
+    private void drain() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+
+        do {
+            while (inFlight.get() < limit) {
+                var next = queued.poll();
+                if (next == null) {
+                    break;
+                }
+                inFlight.incrementAndGet();
+                next.run();
+            }
+        } while (drainers.decrementAndGet() != 0);
+    }
+
+}
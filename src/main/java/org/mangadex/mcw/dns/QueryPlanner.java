@@ -0,0 +1,312 @@
+package org.mangadex.mcw.dns;
+
+import static java.lang.Math.min;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.NameTooLongException;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.NoSuchRRSetException;
+import org.xbill.DNS.lookup.ServerFailedException;
+
+import org.mangadex.mcw.dns.DnsProperties.SearchSettings;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+
+/**
+ * Plans the lookups of names which are not fully qualified, by expanding them with search domains as the system resolver would (see
+ * resolv.conf(5)), and remembering which expansion exists so that later lookups of the same name only ever query that one.
+ * <p>
+ * Expansions are probed one by one, in search order. Those which do not exist (NXDOMAIN) are remembered for their SOA minimum (RFC 2308),
+ * so that neither probing other names nor planning the same name again queries them in the meantime. A plan is kept until the first of
+ * the expansions skipped before it may exist again, as it would then take precedence.
+ * <p>
+ * Expansions which exist without records of the requested type (NODATA) are skipped as well, as the system resolver does, without being
+ * remembered as they may have records of other types. The plan is then kept only until they may have some, as for non-existent ones.
+ * <p>
+ * Expansions which fail otherwise (ie SERVFAIL) are skipped for this lookup only, as the system resolver does. As it is then unknown whether
+ * they exist, the expansion found after them is used without being planned, so that the name is planned again next time.
+ */
+public class QueryPlanner implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanner.class);
+
+    private final Clock clock;
+    private final boolean enabled;
+    private final List<Name> searchPath;
+    private final int ndots;
+    private final long maxNegativeTTLMillis;
+
+    private final Map<Key, Plan> plans = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Planned>> planning = new ConcurrentHashMap<>();
+    private final Map<Name, Long> nxdomains = new ConcurrentHashMap<>();
+
+    private final LongAdder planned = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder nxdomain = new LongAdder();
+    private final LongAdder nodata = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder negative = new LongAdder();
+
+    public QueryPlanner(Clock clock, SearchSettings settings, List<Name> systemSearchPath, int systemNdots) {
+        this.clock = clock;
+        this.enabled = settings.enabled();
+        this.searchPath = settings.domains() == null
+            ? List.copyOf(systemSearchPath)
+            : settings.domains().stream().map(QueryPlanner::absolute).toList();
+        this.ndots = settings.ndots() == null ? systemNdots : settings.ndots();
+        this.maxNegativeTTLMillis = settings.maxNegativeTtl().toMillis();
+        if (enabled) {
+            LOGGER.info("Expanding names which are not fully qualified with search domains {} (ndots: {})", searchPath, ndots);
+        }
+    }
+
+    /**
+     * @return whether the request needs planning before being looked up, rather than being looked up as it is
+     */
+    public boolean plans(DnsRequest request) {
+        return enabled && !request.isAbsolute();
+    }
+
+    /**
+     * @param send sends a single query upstream
+     * @return the fully qualified name to look the request up as, along with its answer if it was just probed, or a stage failed with {@link NoSuchDomainException} if none of its
+     * expansions exist, or with {@link NoSuchRRSetException} if none of those which exist have records of the requested type
+     */
+    public CompletionStage<Planned> plan(DnsRequest request, Function<Message, CompletionStage<Message>> send) {
+        var key = new Key(request.type(), request.name());
+        var previous = plans.get(key);
+        if (previous != null && clock.millis() < previous.validUntilMillis()) {
+            planned.increment();
+            return CompletableFuture.completedFuture(new Planned(previous.qname(), null));
+        }
+
+        var ours = new CompletableFuture<Planned>();
+        var existing = planning.putIfAbsent(key, ours);
+        if (existing != null) {
+            return existing;
+        }
+
+        nxdomains.values().removeIf(expiresAtMillis -> expiresAtMillis <= clock.millis());
+        probe(key, candidates(request.name()).iterator(), Long.MAX_VALUE, false, false, send).whenComplete((probed, error) -> {
+            planning.remove(key, ours);
+            var cause = error instanceof CompletionException ce ? ce.getCause() : error;
+            if (cause == null) {
+                ours.complete(probed);
+            } else if (previous != null && !(cause instanceof NoSuchDomainException) && !(cause instanceof NoSuchRRSetException)) {
+                // transient failures keep the previous plan, rather than failing a name which resolved fine so far
+                LOGGER.debug("Failed planning {} again, keeping previous plan {}", key, previous.qname(), cause);
+                ours.complete(new Planned(previous.qname(), null));
+            } else {
+                plans.remove(key);
+                ours.completeExceptionally(cause);
+            }
+        });
+        return ours;
+    }
+
+    /**
+     * Forgets the plan of a request, ie as the name it was planned as does not exist anymore, so that it is planned again next time
+     */
+    public void forget(DnsRequest request) {
+        plans.remove(new Key(request.type(), request.name()));
+    }
+
+    /**
+     * @return the fully qualified names a name expands to, in the order they are to be looked up in
+     */
+    List<Name> candidates(String name) {
+        var relative = relative(name);
+        var candidates = new ArrayList<Name>(searchPath.size() + 1);
+        for (var domain : searchPath) {
+            try {
+                candidates.add(Name.concatenate(relative, domain));
+            } catch (NameTooLongException e) {
+                LOGGER.debug("Skipping expansion of {} with {}, as it is too long", name, domain);
+            }
+        }
+
+        // names with enough dots are likely fully qualified already, so they are tried as they are first rather than last
+        var asIs = absolute(name);
+        if (relative.labels() - 1 >= ndots) {
+            candidates.addFirst(asIs);
+        } else {
+            candidates.addLast(asIs);
+        }
+        return candidates;
+    }
+
+    /**
+     * @param validUntilMillis time until which none of the expansions skipped so far may exist
+     * @param skippedFailed    whether any of the expansions skipped so far failed, so that whether it exists is unknown
+     * @param skippedNoData    whether any of the expansions skipped so far exists, without records of the requested type
+     */
+    private CompletionStage<Planned> probe(
+        Key key,
+        Iterator<Name> candidates,
+        long validUntilMillis,
+        boolean skippedFailed,
+        boolean skippedNoData,
+        Function<Message, CompletionStage<Message>> send
+    ) {
+        if (!candidates.hasNext()) {
+            var name = absolute(key.name());
+            int type = key.type().code;
+            return CompletableFuture.failedFuture(
+                skippedFailed ? new ServerFailedException(name, type)
+                    : skippedNoData ? new NoSuchRRSetException(name, type)
+                    : new NoSuchDomainException(name, type)
+            );
+        }
+
+        var candidate = candidates.next();
+        var nxdomainUntilMillis = nxdomains.get(candidate);
+        if (nxdomainUntilMillis != null && clock.millis() < nxdomainUntilMillis) {
+            negative.increment();
+            return probe(key, candidates, min(validUntilMillis, nxdomainUntilMillis), skippedFailed, skippedNoData, send);
+        }
+
+        var query = Message.newQuery(Record.newRecord(candidate, key.type().code, DClass.IN));
+        return send.apply(query).thenCompose(response -> switch (response.getRcode()) {
+            case Rcode.NOERROR -> {
+                if (response.getSection(Section.ANSWER).stream().noneMatch(r -> r.getType() == key.type().code)) {
+                    nodata.increment();
+                    var expiresAtMillis = clock.millis() + negativeTTLMillis(response);
+                    LOGGER.trace("No {} records for {} while planning {}", key.type(), candidate, key);
+                    yield probe(key, candidates, min(validUntilMillis, expiresAtMillis), skippedFailed, true, send);
+                }
+
+                found.increment();
+                if (skippedFailed) {
+                    LOGGER.debug("Looking {} up as {} without planning it, as an expansion before it failed", key, candidate);
+                } else {
+                    LOGGER.debug("Planned {} as {}", key, candidate);
+                    plans.put(key, new Plan(candidate, validUntilMillis));
+                }
+                yield CompletableFuture.completedFuture(new Planned(candidate, response));
+            }
+            case Rcode.NXDOMAIN -> {
+                nxdomain.increment();
+                var expiresAtMillis = clock.millis() + negativeTTLMillis(response);
+                nxdomains.put(candidate, expiresAtMillis);
+                LOGGER.trace("No such domain {} while planning {}", candidate, key);
+                yield probe(key, candidates, min(validUntilMillis, expiresAtMillis), skippedFailed, skippedNoData, send);
+            }
+            default -> {
+                failed.increment();
+                LOGGER.debug("Skipping {} while planning {}, as it failed with {}", candidate, key, Rcode.string(response.getRcode()));
+                yield probe(key, candidates, validUntilMillis, true, skippedNoData, send);
+            }
+        });
+    }
+
+    /**
+     * @return the SOA minimum of a negative response, or the maximum negative TTL if it has none
+     */
+    private long negativeTTLMillis(Message response) {
+        return response
+            .getSection(Section.AUTHORITY)
+            .stream()
+            .filter(SOARecord.class::isInstance)
+            .map(SOARecord.class::cast)
+            .mapToLong(soa -> min(soa.getTTL(), soa.getMinimum()) * 1000L)
+            .map(ttl -> min(ttl, maxNegativeTTLMillis))
+            .min()
+            .orElse(maxNegativeTTLMillis);
+    }
+
+    public long planned() {
+        return planned.sum();
+    }
+
+    public long found() {
+        return found.sum();
+    }
+
+    public long nxdomain() {
+        return nxdomain.sum();
+    }
+
+    public long nodata() {
+        return nodata.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    public long negative() {
+        return negative.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mcw.dns.search.plans", planned, LongAdder::sum).tag("result", "cached").register(registry);
+        FunctionCounter.builder("mcw.dns.search.probes", found, LongAdder::sum).tag("result", "found").register(registry);
+        FunctionCounter.builder("mcw.dns.search.probes", nxdomain, LongAdder::sum).tag("result", "nxdomain").register(registry);
+        FunctionCounter.builder("mcw.dns.search.probes", nodata, LongAdder::sum).tag("result", "nodata").register(registry);
+        FunctionCounter.builder("mcw.dns.search.probes", failed, LongAdder::sum).tag("result", "failed").register(registry);
+        FunctionCounter.builder("mcw.dns.search.probes", negative, LongAdder::sum).tag("result", "negative-hit").register(registry);
+    }
+
+    private static Name relative(String name) {
+        try {
+            return Name.fromString(name);
+        } catch (TextParseException e) {
+            throw new IllegalArgumentException("Invalid name " + name, e);
+        }
+    }
+
+    private static Name absolute(String name) {
+        try {
+            return Name.fromString(name, Name.root);
+        } catch (TextParseException e) {
+            throw new IllegalArgumentException("Invalid name " + name, e);
+        }
+    }
+
+    /**
+     * @param qname  fully qualified name to look the request up as
+     * @param answer answer to the probe of that name, if it was just probed, so that looking it up does not query it again
+     */
+    public record Planned(Name qname, @Nullable Message answer) { }
+
+    private record Key(RequestType type, String name) {
+
+        @Override
+        public String toString() {
+            return type + " " + name;
+        }
+
+    }
+
+    /**
+     * @param validUntilMillis time until which none of the expansions skipped before this one may exist
+     */
+    private record Plan(Name qname, long validUntilMillis) { }
+
+}
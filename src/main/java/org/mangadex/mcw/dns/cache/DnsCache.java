@@ -0,0 +1,382 @@
+package org.mangadex.mcw.dns.cache;
+
+import static java.lang.Math.min;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolution;
+import org.mangadex.mcw.dns.response.DnsResolutionFailure;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+/**
+ * Process-wide cache of successful DNS answers, shared by every watch.
+ * <p>
+ * Answers are kept for as long as their shortest record TTL, and served with their TTLs decremented by the time spent in cache, so that
+ * downstream TTL computations remain accurate. Concurrent misses on the same key are coalesced into a single upstream lookup.
+ * <p>
+ * When serving stale data is enabled (see RFC 8767), expired answers are retained for a bounded time past their expiry, and served with a
+ * short TTL whenever upstream resolution fails. While a name is failing, its stale answer is served right away, and upstream is only
+ * retried in the background, with exponential backoff.
+ * <p>
+ * Answers may also be restored from a previous process (see {@link DnsCacheSnapshot}). Restored answers are served as fresh for the rest of
+ * their TTL, and once expired are served as stale right away while upstream is retried in the background, whether serving stale data is
+ * enabled or not, so that restarts do not wait on upstream resolution.
+ * <p>
+ * Answers which are not served anymore, ie for names which left every template, are swept from the cache once they can no longer be served
+ * as stale nor restored from a snapshot either.
+ */
+public class DnsCache implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DnsCache.class);
+
+    private static final long SWEEP_INTERVAL_MILLIS = 60_000L;
+
+    private final Clock clock;
+    private final boolean serveStale;
+    private final long staleTTLSeconds;
+    private final long maxStaleMillis;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxRestoredStaleMillis;
+    private final long maxRetainedMillis;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<DnsResolution>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    public DnsCache(Clock clock, DnsCacheSettings settings) {
+        this.clock = clock;
+        this.serveStale = settings.serveStale().enabled();
+        this.staleTTLSeconds = settings.serveStale().ttl().toSeconds();
+        this.maxStaleMillis = settings.serveStale().maxStale().toMillis();
+        this.minBackoffMillis = settings.serveStale().minBackoff().toMillis();
+        this.maxBackoffMillis = settings.serveStale().maxBackoff().toMillis();
+        this.maxRestoredStaleMillis = settings.snapshot().maxAge().toMillis();
+        // expired answers are only worth keeping for as long as they may be served stale, or once snapshotted, restored as such
+        this.maxRetainedMillis = Math.max(serveStale ? maxStaleMillis : 0L, settings.snapshot().enabled() ? maxRestoredStaleMillis : 0L);
+    }
+
+    public CompletionStage<DnsResolution> get(DnsRequest request, Function<DnsRequest, CompletionStage<DnsResolution>> upstream) {
+        var key = new Key(request.type(), request.qname());
+
+        var cached = fresh(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        var entry = entries.get(key);
+        if (entry != null && (entry.failures() > 0 || entry.restored())) {
+            var staleAnswer = stale(key, entry);
+            if (staleAnswer != null) {
+                (entry.restored() ? restored : stale).increment();
+                if (clock.millis() >= entry.retryAtMillis()) {
+                    LOGGER.debug("Revalidating stale answer for {} in the background", key);
+                    fetch(key, request, upstream);
+                }
+                return CompletableFuture.completedFuture(staleAnswer);
+            }
+        }
+
+        return fetch(key, request, upstream);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public long stale() {
+        return stale.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long restored() {
+        return restored.sum();
+    }
+
+    /**
+     * @return a number which changes whenever the cached records do, but not when an answer is refreshed with the same records
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * @return every answer currently cached, including stale ones, as originally observed, unless they are too old to be served anymore
+     */
+    public List<CachedAnswer> answers() {
+        var now = clock.millis();
+        return entries
+            .entrySet()
+            .stream()
+            .filter(e -> now <= retainedUntilMillis(e.getValue()))
+            .map(e -> new CachedAnswer(e.getKey().type(), e.getKey().qname(), e.getValue().answer().records(), e.getValue().observedAtMillis()))
+            .toList();
+    }
+
+    /**
+     * Restores answers observed by a previous process, unless they are too old to be served anymore or a fresher answer is cached already.
+     *
+     * @return the number of answers restored
+     */
+    public int restore(List<CachedAnswer> answers) {
+        var now = clock.millis();
+        int count = 0;
+        for (var answer : answers) {
+            var ttl = answer.records().stream().mapToLong(Record::getTTL).min().orElse(0L);
+            var expiresAtMillis = answer.observedAtMillis() + ttl * 1000L;
+            if (ttl < 1L || now > expiresAtMillis + maxRestoredStaleMillis) {
+                continue;
+            }
+
+            var key = new Key(answer.type(), answer.qname());
+            var entry = new Entry(new DnsResolutionSuccess(answer.records()), answer.observedAtMillis(), expiresAtMillis, 0, 0L, true);
+            if (entries.putIfAbsent(key, entry) == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mcw.dns.cache.requests", hits, LongAdder::sum).tag("result", "hit").register(registry);
+        FunctionCounter.builder("mcw.dns.cache.requests", misses, LongAdder::sum).tag("result", "miss").register(registry);
+        FunctionCounter.builder("mcw.dns.cache.requests", coalesced, LongAdder::sum).tag("result", "coalesced").register(registry);
+        FunctionCounter.builder("mcw.dns.cache.requests", stale, LongAdder::sum).tag("result", "stale").register(registry);
+        FunctionCounter.builder("mcw.dns.cache.requests", restored, LongAdder::sum).tag("result", "restored").register(registry);
+        Gauge.builder("mcw.dns.cache.size", entries, Map::size).register(registry);
+    }
+
+    private CompletableFuture<DnsResolution> fetch(Key key, DnsRequest request, Function<DnsRequest, CompletionStage<DnsResolution>> upstream) {
+        var ours = new CompletableFuture<DnsResolution>();
+        var existing = inflight.putIfAbsent(key, ours);
+        if (existing != null) {
+            LOGGER.trace("Coalesced lookup of {} with in-flight one", key);
+            coalesced.increment();
+            return existing;
+        }
+
+        // another lookup of this key may have completed between our first check and claiming the in-flight slot
+        var cached = fresh(key);
+        if (cached != null) {
+            inflight.remove(key, ours);
+            hits.increment();
+            ours.complete(cached);
+            return ours;
+        }
+
+        misses.increment();
+        CompletionStage<DnsResolution> lookup;
+        try {
+            lookup = upstream.apply(request);
+        } catch (Throwable t) {
+            lookup = CompletableFuture.failedFuture(t);
+        }
+        lookup.whenComplete((resolution, error) -> {
+            DnsResolution result = resolution;
+            if (resolution instanceof DnsResolutionSuccess success) {
+                store(key, success);
+            } else {
+                var cause = error != null ? error : ((DnsResolutionFailure) resolution).cause();
+                var staleAnswer = failed(key, cause);
+                if (staleAnswer != null) {
+                    stale.increment();
+                    result = staleAnswer;
+                }
+            }
+
+            inflight.remove(key, ours);
+            if (result == null) {
+                ours.completeExceptionally(error);
+            } else {
+                ours.complete(result);
+            }
+        });
+        return ours;
+    }
+
+    private DnsResolutionSuccess fresh(Key key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        var remainingSeconds = (entry.expiresAtMillis() - clock.millis()) / 1000L;
+        if (remainingSeconds < 1L) {
+            return null;
+        }
+
+        var records = entry.answer().records().stream().map(r -> withTTL(r, min(r.getTTL(), remainingSeconds))).toList();
+        return new DnsResolutionSuccess(records);
+    }
+
+    private DnsResolutionSuccess stale(Key key, Entry entry) {
+        if (!serveStale && !entry.restored()) {
+            return null;
+        }
+
+        var maxStale = entry.restored() ? maxRestoredStaleMillis : maxStaleMillis;
+        if (clock.millis() > entry.expiresAtMillis() + maxStale) {
+            LOGGER.debug("Evicting answer for {}, as it has been stale for longer than {}", key, Duration.ofMillis(maxStale));
+            if (entries.remove(key, entry)) {
+                version.incrementAndGet();
+            }
+            return null;
+        }
+
+        var records = entry.answer().records().stream().map(r -> withTTL(r, staleTTLSeconds)).toList();
+        return new DnsResolutionSuccess(records);
+    }
+
+    private void store(Key key, DnsResolutionSuccess answer) {
+        var ttl = answer.records().stream().mapToLong(Record::getTTL).min().orElse(0L);
+        if (ttl < 1L) {
+            // nothing worth keeping, ie empty answer or explicitly uncacheable records
+            if (entries.remove(key) != null) {
+                version.incrementAndGet();
+            }
+            return;
+        }
+
+        var now = clock.millis();
+        sweepIfDue(now);
+        var previous = entries.put(key, new Entry(answer, now, now + ttl * 1000L, 0, 0L, false));
+        if (previous == null || !Set.copyOf(previous.answer().records()).equals(Set.copyOf(answer.records()))) {
+            // records compare regardless of their TTL and order, so that refreshing an unchanged answer does not count as a change
+            version.incrementAndGet();
+        }
+        if (previous != null && previous.failures() > 0) {
+            LOGGER.info("Upstream resolution of {} recovered after {} failed attempts", key, previous.failures());
+        }
+        LOGGER.trace("Caching answer for {} for {}s", key, ttl);
+    }
+
+    /**
+     * Records an upstream failure for the given key, and returns the stale answer to serve in its stead, if any.
+     */
+    private DnsResolutionSuccess failed(Key key, Throwable cause) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        var staleAnswer = stale(key, entry);
+        if (staleAnswer == null) {
+            return null;
+        }
+
+        var failures = entry.failures() + 1;
+        var backoff = min(maxBackoffMillis, minBackoffMillis << min(failures - 1, 20));
+        entries.replace(
+            key,
+            entry,
+            new Entry(entry.answer(), entry.observedAtMillis(), entry.expiresAtMillis(), failures, clock.millis() + backoff, entry.restored())
+        );
+
+        if (failures == 1) {
+            LOGGER.warn("Upstream resolution of {} failed, serving stale answer: {}", key, String.valueOf(cause));
+        } else {
+            LOGGER.debug("Upstream resolution of {} failed {} times, serving stale answer and retrying in {}ms", key, failures, backoff);
+        }
+        return staleAnswer;
+    }
+
+    private long retainedUntilMillis(Entry entry) {
+        return entry.expiresAtMillis() + (entry.restored() ? maxRestoredStaleMillis : maxRetainedMillis);
+    }
+
+    /**
+     * Evicts answers which can no longer be served, as those which are not looked up anymore would otherwise never be, at most once per
+     * sweep interval so that storing answers does not walk the whole cache every time.
+     */
+    private void sweepIfDue(long now) {
+        var due = nextSweepMillis.get();
+        if (now < due || !nextSweepMillis.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) {
+            return;
+        }
+
+        entries.forEach((key, entry) -> {
+            if (now > retainedUntilMillis(entry) && entries.remove(key, entry)) {
+                LOGGER.debug("Evicting answer for {}, as it expired too long ago to be served", key);
+                version.incrementAndGet();
+            }
+        });
+    }
+
+    static Record withTTL(Record record, long ttl) {
+        if (record.getTTL() == ttl) {
+            return record;
+        }
+        return Record.newRecord(record.getName(), record.getType(), record.getDClass(), ttl, record.rdataToWireCanonical());
+    }
+
+    private record Key(RequestType type, Name qname) {
+
+        @Override
+        public String toString() {
+            return type + " " + qname;
+        }
+
+    }
+
+    /**
+     * An answer as observed from upstream, with its records' original TTLs
+     */
+    public record CachedAnswer(RequestType type, Name qname, List<Record> records, long observedAtMillis) { }
+
+    /**
+     * @param failures      number of consecutive upstream failures since this answer was last refreshed
+     * @param retryAtMillis earliest time to retry upstream resolution at, while failing (or restored)
+     * @param restored      whether this answer was restored from a previous process, rather than observed by this one
+     */
+    private record Entry(
+        DnsResolutionSuccess answer,
+        long observedAtMillis,
+        long expiresAtMillis,
+        int failures,
+        long retryAtMillis,
+        boolean restored
+    ) { }
+
+}
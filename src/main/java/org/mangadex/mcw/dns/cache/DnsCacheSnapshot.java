@@ -0,0 +1,156 @@
+package org.mangadex.mcw.dns.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.cache.DnsCache.CachedAnswer;
+import org.mangadex.mcw.dns.request.RequestType;
+
+/**
+ * Persists the answers of a {@link DnsCache} to a local file, and restores them on startup.
+ * <p>
+ * Answers are stored with their records in DNS wire format and the time they were observed at, so that their remaining TTL is known once
+ * restored. The file is only written when the cached records changed since it was last written, or once half of the maximum age of restored
+ * answers passed since, so that answers which keep being refreshed with the same records are not dropped on restore as too old. It is
+ * replaced atomically so that a crash mid-write leaves the previous snapshot in place.
+ */
+public class DnsCacheSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DnsCacheSnapshot.class);
+
+    private static final int MAGIC = 0x4d435744; // MCWD
+    private static final int FORMAT_VERSION = 1;
+
+    private final Clock clock;
+    private final DnsCache cache;
+    private final Path path;
+    private final long rewriteMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile long savedVersion = -1L;
+    private volatile long savedAtMillis;
+
+    public DnsCacheSnapshot(Clock clock, DnsCache cache, SnapshotSettings settings) {
+        this.clock = clock;
+        this.cache = cache;
+        this.path = settings.enabled() ? settings.path() : null;
+        this.rewriteMillis = settings.maxAge().toMillis() / 2;
+        if (settings.enabled() && path == null) {
+            throw new IllegalArgumentException("DNS cache snapshots require a path");
+        }
+    }
+
+    /**
+     * Restores the answers of the snapshot file into the cache, if any. Unreadable snapshots are ignored, as they only ever save time.
+     */
+    public void load() {
+        if (path == null) {
+            return;
+        }
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring DNS cache snapshot {} of unknown format", path);
+                return;
+            }
+
+            int count = in.readInt();
+            var answers = new ArrayList<CachedAnswer>(count);
+            for (int i = 0; i < count; i++) {
+                answers.add(readAnswer(in));
+            }
+
+            var restored = cache.restore(answers);
+            LOGGER.info("Restored {} of {} DNS answers from snapshot {}", restored, count, path);
+        } catch (NoSuchFileException e) {
+            LOGGER.info("No DNS cache snapshot found at {}, starting cold", path);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable DNS cache snapshot {}: {} {}", path, e.getClass().getSimpleName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the answers of the cache to the snapshot file, unless it was written recently and their records did not change since. Failures
+     * are only logged, as they only ever cost time on the next restart.
+     */
+    public void save() {
+        if (path == null || upToDate(cache.version())) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            var version = cache.version();
+            if (upToDate(version)) {
+                return;
+            }
+
+            var answers = cache.answers();
+            var temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(answers.size());
+                for (var answer : answers) {
+                    writeAnswer(out, answer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            savedVersion = version;
+            savedAtMillis = clock.millis();
+            LOGGER.debug("Saved {} DNS answers to snapshot {}", answers.size(), path);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed saving DNS cache snapshot {}: {} {}", path, e.getClass().getSimpleName(), e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean upToDate(long version) {
+        return version == savedVersion && clock.millis() - savedAtMillis < rewriteMillis;
+    }
+
+    private static void writeAnswer(DataOutputStream out, CachedAnswer answer) throws IOException {
+        out.writeUTF(answer.type().name());
+        out.writeUTF(answer.qname().toString());
+        out.writeLong(answer.observedAtMillis());
+        out.writeShort(answer.records().size());
+        for (var record : answer.records()) {
+            var wire = record.toWire(Section.ANSWER);
+            out.writeShort(wire.length);
+            out.write(wire);
+        }
+    }
+
+    private static CachedAnswer readAnswer(DataInputStream in) throws IOException {
+        var type = RequestType.valueOf(in.readUTF());
+        var qname = Name.fromString(in.readUTF());
+        var observedAtMillis = in.readLong();
+        int count = in.readUnsignedShort();
+        var records = new ArrayList<Record>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(Record.fromWire(in.readNBytes(in.readUnsignedShort()), Section.ANSWER));
+        }
+        return new CachedAnswer(type, qname, List.copyOf(records), observedAtMillis);
+    }
+
+}
@@ -13,6 +13,13 @@ public record DnsRequest(
     @NotBlank String name
 ) {
 
+    /**
+     * @return whether the name is fully qualified (ie has a trailing dot), and so is never expanded with search domains
+     */
+    public boolean isAbsolute() {
+        return name.endsWith(".");
+    }
+
     public Name qname() {
         try {
             return Name.fromString(name(), Name.root);
@@ -0,0 +1,87 @@
+package org.mangadex.mcw.dns.transport;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Hedging counts, along with latency histograms and failure counts of each nameserver queried through a {@link HedgingResolver}.
+ * <p>
+ * Nameserver meters are registered as resolvers are built, which is before any registry is bound, so they are held by a composite
+ * registry which forwards to registries once they are bound.
+ */
+public class HedgingMetrics implements MeterBinder {
+
+    private final CompositeMeterRegistry nameservers = new CompositeMeterRegistry();
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder failover = new LongAdder();
+    private final LongAdder won = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+
+    Timer latency(String nameserver) {
+        return Timer
+            .builder("mcw.dns.nameserver.latency")
+            .description("Time to an answer from the nameserver, for queries it answered")
+            .tag("nameserver", nameserver)
+            .publishPercentileHistogram()
+            .register(nameservers);
+    }
+
+    Counter failures(String nameserver) {
+        return Counter.builder("mcw.dns.nameserver.failures").tag("nameserver", nameserver).register(nameservers);
+    }
+
+    void ejected(String nameserver, Supplier<Number> ejected) {
+        Gauge.builder("mcw.dns.nameserver.ejected", ejected).tag("nameserver", nameserver).register(nameservers);
+    }
+
+    void queryHedged() {
+        hedged.increment();
+    }
+
+    void queryFailedOver() {
+        failover.increment();
+    }
+
+    void hedgeWon() {
+        won.increment();
+    }
+
+    void nameserverEjected() {
+        ejections.increment();
+    }
+
+    public long hedged() {
+        return hedged.sum();
+    }
+
+    public long failovers() {
+        return failover.sum();
+    }
+
+    public long hedgesWon() {
+        return won.sum();
+    }
+
+    public long ejections() {
+        return ejections.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        nameservers.add(registry);
+        FunctionCounter.builder("mcw.dns.hedging", hedged, LongAdder::sum).tag("result", "hedged").register(registry);
+        FunctionCounter.builder("mcw.dns.hedging", failover, LongAdder::sum).tag("result", "failover").register(registry);
+        FunctionCounter.builder("mcw.dns.hedging", won, LongAdder::sum).tag("result", "won").register(registry);
+        FunctionCounter.builder("mcw.dns.nameserver.ejections", ejections, LongAdder::sum).register(registry);
+    }
+
+}
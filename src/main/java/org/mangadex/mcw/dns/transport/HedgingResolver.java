@@ -0,0 +1,315 @@
+package org.mangadex.mcw.dns.transport;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TSIG;
+
+import org.mangadex.mcw.dns.DnsProperties.HedgingSettings;
+
+/**
+ * Resolver which sends each query to the nameserver expected to answer it fastest, and hedges it to the next best one if no answer came
+ * in by the time most answers of the first one usually do, taking whichever answer comes first.
+ * <p>
+ * Nameservers are ranked by their expected latency, weighing a moving average of their latency with that of their error rate, where
+ * failing costs a full timeout. Nameservers which fail a number of queries in a row are ejected from the ranking for a while, unless
+ * all of them are. A query which fails is sent to the next best nameserver it was not sent to yet right away, and so on down the ranking
+ * until one of them answers or all of them failed.
+ */
+public class HedgingResolver implements Resolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgingResolver.class);
+
+    private static final double ALPHA = 0.2;
+    private static final int SAMPLES = 64;
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Clock clock;
+    private final List<Server> servers;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final int maxFailures;
+    private final long ejectionMillis;
+    private final HedgingMetrics metrics;
+
+    private volatile Duration timeout = DEFAULT_TIMEOUT;
+
+    public HedgingResolver(Clock clock, List<Nameserver> nameservers, HedgingSettings settings, HedgingMetrics metrics) {
+        if (nameservers.isEmpty()) {
+            throw new IllegalArgumentException("Hedging requires at least one nameserver");
+        }
+        this.clock = clock;
+        this.percentile = settings.percentile();
+        this.minDelayNanos = settings.minDelay().toNanos();
+        this.maxFailures = settings.maxFailures();
+        this.ejectionMillis = settings.ejection().toMillis();
+        this.metrics = metrics;
+        this.servers = nameservers.stream().map(Server::new).toList();
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+        var hedged = new HedgedQuery(query, executor, rank());
+        hedged.start();
+        return hedged.answer;
+    }
+
+    /**
+     * @return nameservers which are not ejected, or all of them if they all are, from the one expected to answer fastest
+     */
+    private List<Server> rank() {
+        var now = clock.millis();
+        var timeoutNanos = timeout.toNanos();
+        var healthy = servers.stream().filter(server -> !server.ejected(now)).toList();
+        var candidates = healthy.isEmpty() ? servers : healthy;
+        return candidates
+            .stream()
+            .map(server -> new Ranked(server, server.expectedNanos(timeoutNanos)))
+            .sorted(Comparator.comparingDouble(Ranked::expectedNanos))
+            .map(Ranked::server)
+            .toList();
+    }
+
+    @Override
+    public void setPort(int port) {
+        servers.forEach(server -> server.resolver.setPort(port));
+    }
+
+    @Override
+    public void setTCP(boolean flag) {
+        servers.forEach(server -> server.resolver.setTCP(flag));
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag) {
+        servers.forEach(server -> server.resolver.setIgnoreTruncation(flag));
+    }
+
+    @Override
+    public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+        servers.forEach(server -> server.resolver.setEDNS(version, payloadSize, flags, options));
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key) {
+        servers.forEach(server -> server.resolver.setTSIGKey(key));
+    }
+
+    @Override
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+        servers.forEach(server -> server.resolver.setTimeout(timeout));
+    }
+
+    @Override
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingResolver " + servers.stream().map(server -> server.name).toList();
+    }
+
+    /**
+     * @param name     name of the nameserver in logs and metrics, ie its address
+     * @param resolver resolver sending queries to the nameserver
+     */
+    public record Nameserver(String name, Resolver resolver) { }
+
+    private record Ranked(Server server, double expectedNanos) { }
+
+    /**
+     * A query sent to the best nameserver, hedged to the next best one at most once, and failed over down the ranking whenever a nameserver
+     * fails it, until one of them answers or all of them failed
+     */
+    private final class HedgedQuery {
+
+        private final Message query;
+        private final Executor executor;
+        private final List<Server> ranked;
+        private final CompletableFuture<Message> answer = new CompletableFuture<>();
+        // index of the next nameserver of the ranking to send the query to
+        private final AtomicInteger next = new AtomicInteger(1);
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private HedgedQuery(Message query, Executor executor, List<Server> ranked) {
+            this.query = query;
+            this.executor = executor;
+            this.ranked = ranked;
+        }
+
+        private void start() {
+            var primary = ranked.getFirst();
+            send(primary, false);
+            if (ranked.size() > 1) {
+                CompletableFuture.delayedExecutor(primary.hedgeDelayNanos(), NANOSECONDS, executor).execute(this::hedge);
+            }
+        }
+
+        private void hedge() {
+            // only hedges to the second best nameserver, unless the query failed over to it (or further) already
+            if (answer.isDone() || !next.compareAndSet(1, 2)) {
+                return;
+            }
+
+            metrics.queryHedged();
+            LOGGER.trace("Hedging {} to {}, as {} did not answer yet", query.getQuestion(), ranked.get(1).name, ranked.getFirst().name);
+            send(ranked.get(1), true);
+        }
+
+        private void failover() {
+            if (answer.isDone()) {
+                return;
+            }
+
+            var index = next.getAndIncrement();
+            if (index < ranked.size()) {
+                metrics.queryFailedOver();
+                send(ranked.get(index), false);
+            }
+        }
+
+        private void send(Server server, boolean hedge) {
+            outstanding.incrementAndGet();
+            var start = System.nanoTime();
+            server.resolver.sendAsync(query.clone(), executor).whenComplete((response, error) -> {
+                if (error == null) {
+                    server.succeeded(System.nanoTime() - start);
+                    if (answer.complete(response) && hedge) {
+                        metrics.hedgeWon();
+                    }
+                    return;
+                }
+
+                var cause = error instanceof CompletionException ce ? ce.getCause() : error;
+                server.failed(cause);
+                // the next nameserver not queried yet is queried right away, if any is left
+                failover();
+                if (outstanding.decrementAndGet() == 0) {
+                    answer.completeExceptionally(cause);
+                }
+            });
+        }
+
+    }
+
+    private final class Server {
+
+        private final String name;
+        private final Resolver resolver;
+        private final Timer latency;
+        private final Counter failures;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] samples = new long[SAMPLES];
+        // next sample to overwrite, and number of samples taken so far, up to as many as are kept
+        private int next;
+        private int sampled;
+        private double latencyNanos;
+        private double errorRate;
+        private int failuresInARow;
+        private volatile long ejectedUntilMillis;
+
+        private Server(Nameserver nameserver) {
+            this.name = nameserver.name();
+            this.resolver = nameserver.resolver();
+            this.latency = metrics.latency(name);
+            this.failures = metrics.failures(name);
+            metrics.ejected(name, () -> ejected(clock.millis()) ? 1 : 0);
+        }
+
+        private void succeeded(long nanos) {
+            latency.record(nanos, NANOSECONDS);
+            lock.lock();
+            try {
+                samples[next] = nanos;
+                next = (next + 1) % SAMPLES;
+                latencyNanos = sampled == 0 ? nanos : latencyNanos + ALPHA * (nanos - latencyNanos);
+                sampled = Math.min(sampled + 1, SAMPLES);
+                errorRate -= ALPHA * errorRate;
+                failuresInARow = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void failed(Throwable cause) {
+            failures.increment();
+            lock.lock();
+            try {
+                errorRate += ALPHA * (1 - errorRate);
+                if (++failuresInARow >= maxFailures) {
+                    LOGGER.warn(
+                        "Ejecting nameserver {} for {}ms after {} failures in a row: {}",
+                        name,
+                        ejectionMillis,
+                        failuresInARow,
+                        cause.toString()
+                    );
+                    ejectedUntilMillis = clock.millis() + ejectionMillis;
+                    failuresInARow = 0;
+                    metrics.nameserverEjected();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean ejected(long nowMillis) {
+            return nowMillis < ejectedUntilMillis;
+        }
+
+        /**
+         * @return expected time to an answer, where failures cost a full timeout
+         */
+        private double expectedNanos(long timeoutNanos) {
+            lock.lock();
+            try {
+                return (1 - errorRate) * latencyNanos + errorRate * timeoutNanos;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return time after which most of the recent answers of this nameserver came in, or the minimum delay if that is shorter
+         */
+        private long hedgeDelayNanos() {
+            long[] recent;
+            lock.lock();
+            try {
+                recent = Arrays.copyOf(samples, sampled);
+            } finally {
+                lock.unlock();
+            }
+            if (recent.length == 0) {
+                return minDelayNanos;
+            }
+
+            Arrays.sort(recent);
+            var index = Math.clamp((long) Math.ceil(percentile * recent.length) - 1, 0, recent.length - 1);
+            return Math.max(minDelayNanos, recent[index]);
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.mangadex.mcw.dns.transport;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mangadex.mcw.dns.transport.HedgingResolver.Nameserver;
+
+/**
+ * The nameservers queried by the resolver, which owns their resolvers so that those holding connections open (ie
+ * {@link PipelinedTcpResolver}) are closed once they are not queried anymore.
+ *
+ * @param all nameservers, in configuration order
+ */
+public record Nameservers(List<Nameserver> all) implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Nameservers.class);
+
+    @Override
+    public void close() {
+        for (var nameserver : all) {
+            if (nameserver.resolver() instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    LOGGER.warn("Failed closing resolver of nameserver {}: {}", nameserver.name(), e.getMessage());
+                }
+            }
+        }
+    }
+
+}
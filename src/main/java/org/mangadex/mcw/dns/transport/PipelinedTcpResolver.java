@@ -0,0 +1,373 @@
+package org.mangadex.mcw.dns.transport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.EDNSOption;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.TSIG;
+import org.xbill.DNS.WireParseException;
+
+/**
+ * Resolver which sends all its queries to a single nameserver over one persistent TCP connection, rather than opening a new one per
+ * query as {@link org.xbill.DNS.SimpleResolver} does when forced to use TCP.
+ * <p>
+ * Queries are pipelined (RFC 7766, section 6.2.1): they are written as soon as they are sent without waiting for earlier answers, and
+ * answers are matched back to their query by message id in whatever order the nameserver sends them. Ids are thus assigned per
+ * connection, so that concurrent queries never share one, and the original id of the query is restored on its answer.
+ * <p>
+ * The connection is opened on the first query and closed once no answer came in for the idle timeout while no query was outstanding.
+ * Queries still outstanding when the connection is closed by the nameserver are sent again once on a new connection, as nameservers are
+ * free to close connections at any time (RFC 7766, section 6.2.3). Once the resolver itself is closed, queries fail right away instead.
+ */
+public class PipelinedTcpResolver implements Resolver, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedTcpResolver.class);
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final InetAddress address;
+    private final Duration idleTimeout;
+    private final TcpTransportMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Connection connection;
+    private volatile boolean closed;
+
+    private volatile int port = 53;
+    private volatile Duration timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param address     address of the nameserver
+     * @param idleTimeout how long the connection is kept open without any query outstanding nor answer coming in
+     */
+    public PipelinedTcpResolver(InetAddress address, Duration idleTimeout, TcpTransportMetrics metrics) {
+        this.address = address;
+        this.idleTimeout = idleTimeout;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+        // answers are handed off so that callers never run on, and hold up, the thread reading the connection
+        return send(query, true).thenApplyAsync(Function.identity(), executor);
+    }
+
+    private CompletableFuture<Message> send(Message query, boolean retry) {
+        return connection()
+            .thenCompose(connection -> connection.send(query))
+            .exceptionallyCompose(error -> {
+                var cause = error instanceof CompletionException ce ? ce.getCause() : error;
+                if (retry && !closed && cause instanceof ConnectionClosedException) {
+                    LOGGER.debug("Connection to {} closed while sending {}, retrying on a new one", nameserver(), query.getQuestion());
+                    metrics.queryRetried();
+                    return send(query, false);
+                }
+                return CompletableFuture.failedFuture(cause);
+            });
+    }
+
+    private CompletableFuture<Connection> connection() {
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IOException("Resolver for " + nameserver() + " closed"));
+            }
+            if (connection == null || connection.closed) {
+                connection = new Connection(nameserver());
+                connection.open();
+            }
+            return connection.ready;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the connection, if any, failing the queries outstanding on it without retrying them, along with any query sent afterwards
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (connection != null) {
+                connection.close(new ConnectionClosedException("Resolver closed", null), false);
+                connection = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private InetSocketAddress nameserver() {
+        return new InetSocketAddress(address, port);
+    }
+
+    @Override
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void setTCP(boolean flag) {
+        // always TCP
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag) {
+        // answers over TCP are never truncated
+    }
+
+    @Override
+    public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+        // queries are sent as they are given, the payload size only matters over UDP anyway
+    }
+
+    /**
+     * Queries are never signed here, as there is no TSIG configuration to sign them with. Rejecting keys rather than ignoring them makes
+     * sure a later caller does not silently send unsigned queries.
+     */
+    @Override
+    public void setTSIGKey(TSIG key) {
+        throw new UnsupportedOperationException("TSIG is not supported over pipelined TCP");
+    }
+
+    @Override
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelinedTcpResolver [" + nameserver() + "]";
+    }
+
+    private final class Connection {
+
+        private final InetSocketAddress nameserver;
+        private final CompletableFuture<Connection> ready = new CompletableFuture<>();
+        private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+
+        // guards writes, id assignment and closing, so that no query is written to, or left pending on, a closed connection
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean closed;
+        private Socket socket;
+        private DataOutputStream out;
+        private int nextId = ThreadLocalRandom.current().nextInt(0x10000);
+
+        private Connection(InetSocketAddress nameserver) {
+            this.nameserver = nameserver;
+        }
+
+        private void open() {
+            Thread.ofVirtual().name("dns-tcp-" + nameserver).start(() -> {
+                DataInputStream in;
+                lock.lock();
+                try {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(nameserver, (int) timeout.toMillis());
+                    socket.setSoTimeout((int) idleTimeout.toMillis());
+                    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                } catch (IOException e) {
+                    LOGGER.warn("Failed connecting to {}: {}", nameserver, e.getMessage());
+                    metrics.connectionFailed();
+                    closed = true;
+                    closeSocket();
+                    ready.completeExceptionally(e);
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+
+                LOGGER.debug("Connected to {}", nameserver);
+                metrics.connectionOpened();
+                ready.complete(this);
+                read(in);
+            });
+        }
+
+        private CompletableFuture<Message> send(Message query) {
+            var answer = new CompletableFuture<Message>();
+            var entry = new Pending(query, answer);
+            int id;
+            lock.lock();
+            try {
+                if (closed) {
+                    return CompletableFuture.failedFuture(new ConnectionClosedException("Connection to " + nameserver + " closed", null));
+                }
+                if (pending.size() >= 0x10000) {
+                    return CompletableFuture.failedFuture(new IOException("No message id left on connection to " + nameserver));
+                }
+
+                do {
+                    id = nextId;
+                    nextId = (nextId + 1) & 0xFFFF;
+                } while (pending.containsKey(id));
+
+                var wire = query.clone();
+                wire.getHeader().setID(id);
+                var bytes = wire.toWire(Message.MAXLENGTH);
+
+                pending.put(id, entry);
+                metrics.querySent();
+                try {
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                    out.flush();
+                } catch (IOException e) {
+                    // fails the query, along with all others pending, so that it is retried on a new connection
+                    close(e, false);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            var sent = id;
+            answer.orTimeout(timeout.toMillis(), MILLISECONDS).whenComplete((_, error) -> {
+                // the id may have been reused by a later query already, if this one was answered or failed first
+                pending.remove(sent, entry);
+                metrics.queryCompleted();
+                if (error instanceof TimeoutException) {
+                    metrics.queryTimedOut();
+                }
+            });
+            return answer;
+        }
+
+        private void read(DataInputStream in) {
+            try {
+                while (!closed) {
+                    int high;
+                    try {
+                        high = in.read();
+                    } catch (SocketTimeoutException e) {
+                        closeIfIdle();
+                        continue;
+                    }
+                    if (high < 0) {
+                        throw new EOFException("Connection closed by nameserver");
+                    }
+
+                    var bytes = new byte[(high << 8) | in.readUnsignedByte()];
+                    in.readFully(bytes);
+                    answer(new Message(bytes));
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.debug("Connection to {} failed with {} queries pending: {}", nameserver, pending.size(), e.getMessage());
+                    // a nameserver closing the connection with nothing pending is just it timing it out first
+                    close(e, pending.isEmpty() && e instanceof EOFException);
+                }
+            }
+        }
+
+        private void answer(Message response) {
+            var query = pending.remove(response.getHeader().getID());
+            if (query == null) {
+                LOGGER.debug("Dropping answer from {} to no pending query, as it likely timed out: {}", nameserver, response.getQuestion());
+                return;
+            }
+
+            var question = query.message().getQuestion();
+            if (response.getQuestion() != null && !response.getQuestion().equals(question)) {
+                query.answer().completeExceptionally(new WireParseException(
+                    "Answer from " + nameserver + " is to " + response.getQuestion() + " rather than " + question
+                ));
+                return;
+            }
+
+            response.getHeader().setID(query.message().getHeader().getID());
+            query.answer().complete(response);
+        }
+
+        private void closeIfIdle() {
+            lock.lock();
+            try {
+                if (!closed && pending.isEmpty()) {
+                    LOGGER.debug("Closing connection to {}, idle for {}", nameserver, idleTimeout);
+                    close(null, true);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close(Throwable cause, boolean idle) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                closeSocket();
+                metrics.connectionClosed(idle);
+            } finally {
+                lock.unlock();
+            }
+
+            var failure = cause instanceof ConnectionClosedException closure
+                ? closure
+                : new ConnectionClosedException("Connection to " + nameserver + " closed", cause);
+            pending.values().forEach(query -> query.answer().completeExceptionally(failure));
+            pending.clear();
+        }
+
+        private void closeSocket() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed closing connection to {}", nameserver, e);
+            }
+        }
+
+    }
+
+    private record Pending(Message message, CompletableFuture<Message> answer) { }
+
+    /**
+     * The connection a query was sent on was closed before its answer came in
+     */
+    private static final class ConnectionClosedException extends IOException {
+
+        private ConnectionClosedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+    }
+
+}
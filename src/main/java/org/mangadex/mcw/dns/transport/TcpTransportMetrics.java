@@ -0,0 +1,102 @@
+package org.mangadex.mcw.dns.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Connection and query counts of the persistent TCP connections to nameservers, across all of them.
+ */
+public class TcpTransportMetrics implements MeterBinder {
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsFailed = new LongAdder();
+    private final LongAdder connectionsClosedIdle = new LongAdder();
+    private final LongAdder connectionsClosedError = new LongAdder();
+    private final LongAdder queriesSent = new LongAdder();
+    private final LongAdder queriesRetried = new LongAdder();
+    private final LongAdder queriesTimedOut = new LongAdder();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    void connectionOpened() {
+        connectionsOpened.increment();
+        connections.incrementAndGet();
+    }
+
+    void connectionFailed() {
+        connectionsFailed.increment();
+    }
+
+    void connectionClosed(boolean idle) {
+        (idle ? connectionsClosedIdle : connectionsClosedError).increment();
+        connections.decrementAndGet();
+    }
+
+    void querySent() {
+        queriesSent.increment();
+        inFlight.incrementAndGet();
+    }
+
+    void queryCompleted() {
+        inFlight.decrementAndGet();
+    }
+
+    void queryRetried() {
+        queriesRetried.increment();
+    }
+
+    void queryTimedOut() {
+        queriesTimedOut.increment();
+    }
+
+    public long connectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    public long connectionsClosedIdle() {
+        return connectionsClosedIdle.sum();
+    }
+
+    public long connectionsClosedError() {
+        return connectionsClosedError.sum();
+    }
+
+    public long queriesSent() {
+        return queriesSent.sum();
+    }
+
+    public long queriesRetried() {
+        return queriesRetried.sum();
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mcw.dns.tcp.connections.opened", connectionsOpened, LongAdder::sum).register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.connections.failed", connectionsFailed, LongAdder::sum).register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.connections.closed", connectionsClosedIdle, LongAdder::sum)
+            .tag("reason", "idle")
+            .register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.connections.closed", connectionsClosedError, LongAdder::sum)
+            .tag("reason", "error")
+            .register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.queries", queriesSent, LongAdder::sum).tag("result", "sent").register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.queries", queriesRetried, LongAdder::sum).tag("result", "retried").register(registry);
+        FunctionCounter.builder("mcw.dns.tcp.queries", queriesTimedOut, LongAdder::sum).tag("result", "timeout").register(registry);
+        Gauge.builder("mcw.dns.tcp.connections", connections, AtomicInteger::get).register(registry);
+        Gauge.builder("mcw.dns.tcp.queries.inflight", inFlight, AtomicInteger::get).register(registry);
+    }
+
+}
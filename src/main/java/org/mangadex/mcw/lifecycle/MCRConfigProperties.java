@@ -1,5 +1,6 @@
 package org.mangadex.mcw.lifecycle;
 
+import java.time.Duration;
 import java.util.List;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
@@ -31,9 +32,28 @@ public record MCRConfigProperties(
         @NotNull @Pattern(regexp = "^[a-z]+://.+") String output
     ) { }
 
+    /**
+     * @param retryDelaySeconds delay before rendering a template again after it failed rendering or writing
+     * @param debounce          how bursts of template changes are coalesced into a single render
+     */
     @Validated
     public record LifecycleProperties(
-        @Validated @Positive int retryDelaySeconds
+        @Validated @Positive int retryDelaySeconds,
+        @Validated @NotNull DebounceProperties debounce
     ) { }
 
+    /**
+     * @param window     time to wait for further changes of a template before rendering it, which every change restarts (0 renders every change)
+     * @param maxLatency maximum time to wait since the first change of a burst, after which it is rendered even if changes keep coming
+     */
+    @Validated
+    public record DebounceProperties(
+        @NotNull Duration window,
+        @NotNull Duration maxLatency
+    ) {
+
+        public static final DebounceProperties NONE = new DebounceProperties(Duration.ZERO, Duration.ZERO);
+
+    }
+
 }
@@ -2,10 +2,12 @@ package org.mangadex.mcw.lifecycle;
 
 import static java.util.Collections.unmodifiableSet;
 
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,12 +15,20 @@ import org.springframework.boot.actuate.info.Info.Builder;
 import org.springframework.boot.actuate.info.InfoContributor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
-import org.springframework.util.function.ThrowingConsumer;
 
+import org.mangadex.mcw.lifecycle.scheduling.OutputFanOut;
 import org.mangadex.mcw.lifecycle.scheduling.ScheduledRenderTask;
+import org.mangadex.mcw.lifecycle.scheduling.SchedulingMetrics;
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+import org.mangadex.mcw.output.Output;
+import org.mangadex.mcw.output.file.FSDirectoryOutput;
 import org.mangadex.mcw.output.file.FSOutput;
 import org.mangadex.mcw.output.file.FSWriter;
 import org.mangadex.mcw.render.RenderService;
+import org.mangadex.mcw.source.Source;
+import org.mangadex.mcw.source.file.FSDirectoryListener;
+import org.mangadex.mcw.source.file.FSDirectorySource;
+import org.mangadex.mcw.source.file.FSDirectoryWatcher;
 import org.mangadex.mcw.source.file.FSSource;
 import org.mangadex.mcw.source.file.FSWatcher;
 
@@ -30,15 +40,26 @@ public class MCRWatchRegistry implements InfoContributor {
     private final ApplicationContext context;
     private final RenderService renderService;
     private final MCRConfigProperties mcrConfigProperties;
+    private final WatchScheduler scheduler;
+    private final SchedulingMetrics schedulingMetrics;
 
     private final AtomicBoolean running = new AtomicBoolean(false);
-    private final Map<MCRConfig, Registration> registrations = new ConcurrentHashMap<>();
-    private final Set<MCRConfig> registeredConfigs = unmodifiableSet(registrations.keySet());
+    private final Map<Source, Registration> registrations = new ConcurrentHashMap<>();
+    private final Set<MCRConfig> configs = ConcurrentHashMap.newKeySet();
+    private final Set<MCRConfig> registeredConfigs = unmodifiableSet(configs);
 
-    public MCRWatchRegistry(ApplicationContext context, RenderService renderService, MCRConfigProperties mcrConfigProperties) {
+    public MCRWatchRegistry(
+        ApplicationContext context,
+        RenderService renderService,
+        MCRConfigProperties mcrConfigProperties,
+        WatchScheduler scheduler,
+        SchedulingMetrics schedulingMetrics
+    ) {
         this.context = context;
         this.renderService = renderService;
         this.mcrConfigProperties = mcrConfigProperties;
+        this.scheduler = scheduler;
+        this.schedulingMetrics = schedulingMetrics;
     }
 
     public void register(MCRConfig config) {
@@ -51,34 +72,26 @@ public class MCRWatchRegistry implements InfoContributor {
         var source = config.source();
         var output = config.output();
 
-        ThrowingConsumer<String> writeToOutput;
-        switch (output) {
-            case FSOutput fso -> {
-                var fswriter = context.getBean(FSWriter.class);
-                writeToOutput = content -> fswriter.flush(fso, content);
+        // configs sharing a source share its watch and renders, which fan out to each of their outputs
+        registrations.compute(source, (_, existing) -> {
+            if (existing != null) {
+                if (existing.addOutput(output)) {
+                    LOGGER.info("Added output {} to existing config watch of {}", output, source);
+                } else {
+                    LOGGER.warn("Config watch for {} already exists", config);
+                }
+                return existing;
             }
-            default -> throw new UnsupportedOperationException("Unsupported output type " + output.getClass().getSimpleName());
-        }
 
-        ScheduledRenderTask renderTask = new ScheduledRenderTask(
-            renderService::render,
-            writeToOutput,
-            mcrConfigProperties.lifecycle().retryDelaySeconds()
-        );
-
-        switch (source) {
-            case FSSource fss -> {
-                var watcher = context.getBean(FSWatcher.class);
-                watcher.addWatch(fss, renderTask::templateChanged);
-                registrations.put(
-                    config,
-                    new Registration(() -> watcher.removeWatch(fss), renderTask)
-                );
-            }
-            default -> throw new UnsupportedOperationException("Unsupported source type " + source.getClass().getSimpleName());
-        }
-
-        LOGGER.info("Started config watch for {}", config);
+            var registration = switch (source) {
+                case FSSource fss -> new FileRegistration(fss, output);
+                case FSDirectorySource fsds -> new DirectoryRegistration(fsds, output);
+                default -> throw new UnsupportedOperationException("Unsupported source type " + source.getClass().getSimpleName());
+            };
+            LOGGER.info("Started config watch for {}", config);
+            return registration;
+        });
+        configs.add(config);
     }
 
     public void start() {
@@ -89,13 +102,12 @@ public class MCRWatchRegistry implements InfoContributor {
     public void stop() {
         LOGGER.info("Shutting down all config watches");
         running.set(false);
-        registrations.forEach((config, registration) -> {
-            LOGGER.info("Stopping config watch for {}", config);
+        registrations.forEach((source, registration) -> {
+            LOGGER.info("Stopping config watch for {}", source);
             try {
-                registration.stopWatching().run();
-                registration.renderTask.stop();
+                registration.stop();
             } catch (Throwable t) {
-                LOGGER.error("Error while stopping config watch for {}", config, t);
+                LOGGER.error("Error while stopping config watch for {}", source, t);
             }
         });
     }
@@ -105,9 +117,158 @@ public class MCRWatchRegistry implements InfoContributor {
         builder.withDetail("registrations", registeredConfigs);
     }
 
-    private record Registration(
-        Runnable stopWatching,
-        ScheduledRenderTask renderTask
+    /**
+     * @return whether the output was not already rendered to
+     */
+    private boolean addOutput(OutputFanOut outputs, Output output) {
+        return switch (output) {
+            case FSOutput fso -> {
+                var fswriter = context.getBean(FSWriter.class);
+                // seeded with what the output already holds, so that identical renders after a restart do not rewrite it
+                yield outputs.add(fso, content -> fswriter.flush(fso, content), fswriter.checksum(fso));
+            }
+            case FSDirectoryOutput _ -> throw new IllegalArgumentException("Directory outputs can only be used with directory sources");
+            default -> throw new UnsupportedOperationException("Unsupported output type " + output.getClass().getSimpleName());
+        };
+    }
+
+    private ScheduledRenderTask newRenderTask(OutputFanOut outputs) {
+        return new ScheduledRenderTask(
+            scheduler,
+            (template, previous) -> renderService.render(template, previous),
+            outputs,
+            mcrConfigProperties.lifecycle().retryDelaySeconds(),
+            mcrConfigProperties.lifecycle().debounce(),
+            schedulingMetrics
+        );
+    }
+
+    private sealed interface Registration permits FileRegistration, DirectoryRegistration {
+
+        /**
+         * @return whether the output was not already rendered to
+         */
+        boolean addOutput(Output output);
+
+        void stop();
+
+    }
+
+    private final class FileRegistration implements Registration {
+
+        private final FSSource source;
+        private final FSWatcher watcher;
+        private final OutputFanOut outputs = new OutputFanOut();
+        private final ScheduledRenderTask renderTask;
+
+        private FileRegistration(FSSource source, Output output) {
+            this.source = source;
+            this.watcher = context.getBean(FSWatcher.class);
+            MCRWatchRegistry.this.addOutput(outputs, output);
+            this.renderTask = newRenderTask(outputs);
+            watcher.addWatch(source, renderTask::templateChanged);
+        }
+
+        @Override
+        public boolean addOutput(Output output) {
+            if (!MCRWatchRegistry.this.addOutput(outputs, output)) {
+                return false;
+            }
+            renderTask.redeliver();
+            return true;
+        }
+
+        @Override
+        public void stop() {
+            watcher.removeWatch(source);
+            renderTask.stop();
+        }
+
+    }
+
+    /**
+     * Every template of the directory gets its own render task, as if it was registered on its own, which is started and stopped as the
+     * template appears and disappears.
+     */
+    private final class DirectoryRegistration implements Registration, FSDirectoryListener {
+
+        private final FSDirectorySource source;
+        private final FSDirectoryWatcher watcher;
+        private final Set<FSDirectoryOutput> outputs = ConcurrentHashMap.newKeySet();
+        private final Map<Path, TemplateRegistration> templates = new ConcurrentHashMap<>();
+        // templates and outputs are added concurrently, which would otherwise miss each other
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private DirectoryRegistration(FSDirectorySource source, Output output) {
+            this.source = source;
+            this.watcher = context.getBean(FSDirectoryWatcher.class);
+            outputs.add(directoryOutput(output));
+            watcher.addWatch(source, this);
+        }
+
+        @Override
+        public void templateChanged(Path template, String content) {
+            TemplateRegistration registration;
+            try {
+                lock.lock();
+                registration = templates.computeIfAbsent(template, _ -> {
+                    var fanOut = new OutputFanOut();
+                    outputs.forEach(output -> MCRWatchRegistry.this.addOutput(fanOut, output.resolve(template)));
+                    LOGGER.info("Started rendering template {} of {}", template, source);
+                    return new TemplateRegistration(newRenderTask(fanOut), fanOut);
+                });
+            } finally {
+                lock.unlock();
+            }
+            registration.renderTask().templateChanged(content);
+        }
+
+        @Override
+        public void templateRemoved(Path template) {
+            var registration = templates.remove(template);
+            if (registration != null) {
+                registration.renderTask().stop();
+                LOGGER.info("Stopped rendering removed template {} of {}, leaving its last render in place", template, source);
+            }
+        }
+
+        @Override
+        public boolean addOutput(Output output) {
+            var directoryOutput = directoryOutput(output);
+            try {
+                lock.lock();
+                if (!outputs.add(directoryOutput)) {
+                    return false;
+                }
+                templates.forEach((template, registration) -> {
+                    if (MCRWatchRegistry.this.addOutput(registration.outputs(), directoryOutput.resolve(template))) {
+                        registration.renderTask().redeliver();
+                    }
+                });
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void stop() {
+            watcher.removeWatch(source);
+            templates.values().forEach(registration -> registration.renderTask().stop());
+        }
+
+        private static FSDirectoryOutput directoryOutput(Output output) {
+            if (!(output instanceof FSDirectoryOutput directoryOutput)) {
+                throw new IllegalArgumentException("Directory sources can only be used with directory outputs");
+            }
+            return directoryOutput;
+        }
+
+    }
+
+    private record TemplateRegistration(
+        ScheduledRenderTask renderTask,
+        OutputFanOut outputs
     ) { }
 
 }
@@ -3,6 +3,8 @@ package org.mangadex.mcw.lifecycle.parse;
 import org.springframework.stereotype.Component;
 
 import org.mangadex.mcw.lifecycle.MCRConfig;
+import org.mangadex.mcw.output.file.FSDirectoryOutput;
+import org.mangadex.mcw.source.file.FSDirectorySource;
 
 @Component
 public class MCRConfigParser {
@@ -18,6 +20,9 @@ public class MCRConfigParser {
     public MCRConfig parseWatch(String sourceSpec, String outputSpec) {
         var source = sourceParser.convert(sourceSpec);
         var output = outputParser.convert(outputSpec);
+        if (source instanceof FSDirectorySource != output instanceof FSDirectoryOutput) {
+            throw new IllegalArgumentException("Directory sources and outputs go together, but got " + sourceSpec + " -> " + outputSpec);
+        }
 
         return new MCRConfig(source, output);
     }
@@ -5,6 +5,7 @@ import org.springframework.stereotype.Component;
 
 import org.mangadex.mcw.lifecycle.dsn.Dsn;
 import org.mangadex.mcw.output.Output;
+import org.mangadex.mcw.output.file.FSDirectoryOutput;
 import org.mangadex.mcw.output.file.FSOutput;
 
 @Component
@@ -15,7 +16,7 @@ public class OutputParser implements Converter<String, Output> {
         var dsn = Dsn.parse(source);
 
         return switch (dsn.protocol()) {
-            case "file" -> FSOutput.parse(dsn);
+            case "file" -> FSDirectoryOutput.isDirectory(dsn) ? FSDirectoryOutput.parse(dsn) : FSOutput.parse(dsn);
             default -> throw new UnsupportedOperationException("Unsupported output type: " + dsn.protocol());
         };
     }
@@ -8,6 +8,7 @@ import org.springframework.stereotype.Component;
 import org.mangadex.mcw.lifecycle.dsn.Dsn;
 import org.mangadex.mcw.source.Source;
 import org.mangadex.mcw.source.SourceProperties;
+import org.mangadex.mcw.source.file.FSDirectorySource;
 import org.mangadex.mcw.source.file.FSSource;
 
 @Component
@@ -24,7 +25,15 @@ public class SourceParser implements Converter<String, Source> {
         var dsn = Dsn.parse(source);
 
         return switch (dsn.protocol()) {
-            case "file" -> FSSource.parse(dsn, Duration.ofSeconds(sourceProperties.file().checkPeriodSeconds()));
+            case "file" -> {
+                var settings = sourceProperties.file();
+                var period = Duration.ofSeconds(settings.checkPeriodSeconds());
+                // sources never check less often than their own period, so without a maximum they do not back off at all
+                var maxPeriod = settings.maxCheckPeriodSeconds() != null ? Duration.ofSeconds(settings.maxCheckPeriodSeconds()) : Duration.ZERO;
+                yield FSDirectorySource.isDirectory(dsn)
+                    ? FSDirectorySource.parse(dsn, period, settings.mode(), maxPeriod)
+                    : FSSource.parse(dsn, period, settings.mode(), maxPeriod);
+            }
             default -> throw new UnsupportedOperationException("Unsupported source type: " + dsn.protocol());
         };
     }
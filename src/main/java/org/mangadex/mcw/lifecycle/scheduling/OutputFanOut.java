@@ -0,0 +1,123 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jakarta.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.function.ThrowingConsumer;
+
+import org.mangadex.mcw.output.Output;
+
+/**
+ * Writes the renders of a single source to all of its outputs, in parallel.
+ * <p>
+ * Every output remembers what was last written to it, so that when some outputs fail, delivering the same render again only writes to
+ * the outputs which did not get it yet.
+ */
+public final class OutputFanOut implements ThrowingConsumer<String> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutputFanOut.class);
+
+    private final Map<Output, OutputTarget> targets = new ConcurrentHashMap<>();
+
+    /**
+     * @return whether the output was not written to by this fan out yet
+     */
+    public boolean add(Output output, ThrowingConsumer<String> write) {
+        return add(output, write, null);
+    }
+
+    /**
+     * @param md5sum md5 sum of what the output already holds (ie from before a restart), which is then not written again
+     * @return whether the output was not written to by this fan out yet
+     */
+    public boolean add(Output output, ThrowingConsumer<String> write, @Nullable String md5sum) {
+        var target = new OutputTarget(output, write);
+        target.lastWritten = md5sum;
+        return targets.putIfAbsent(output, target) == null;
+    }
+
+    public void remove(Output output) {
+        targets.remove(output);
+    }
+
+    public Set<Output> outputs() {
+        return targets.keySet();
+    }
+
+    @Override
+    public void acceptWithException(String rendered) throws Exception {
+        var md5sum = DigestUtils.md5DigestAsHex(rendered.getBytes(StandardCharsets.UTF_8));
+        var pending = targets.values().stream().filter(target -> !Objects.equals(target.lastWritten, md5sum)).toList();
+        switch (pending.size()) {
+            case 0 -> LOGGER.info("All outputs already hold the rendered configuration (md5: {})", md5sum);
+            case 1 -> pending.getFirst().write(rendered, md5sum);
+            default -> writeAll(pending, rendered, md5sum);
+        }
+    }
+
+    private static void writeAll(List<OutputTarget> pending, String rendered, String md5sum) throws Exception {
+        List<Exception> failures = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> writes = new ArrayList<>(pending.size());
+            for (var target : pending) {
+                writes.add(executor.submit(() -> {
+                    target.write(rendered, md5sum);
+                    return null;
+                }));
+            }
+            for (var write : writes) {
+                try {
+                    write.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause() instanceof Exception cause ? cause : e);
+                }
+            }
+        }
+
+        if (failures.size() == 1) {
+            throw failures.getFirst();
+        } else if (!failures.isEmpty()) {
+            var failure = new IOException("Failed writing to " + failures.size() + " of " + pending.size() + " outputs");
+            failures.forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+
+    private static final class OutputTarget {
+
+        private final Output output;
+        private final ThrowingConsumer<String> write;
+
+        private volatile String lastWritten;
+
+        private OutputTarget(Output output, ThrowingConsumer<String> write) {
+            this.output = output;
+            this.write = write;
+        }
+
+        private void write(String rendered, String md5sum) throws Exception {
+            try {
+                write.acceptWithException(rendered);
+                lastWritten = md5sum;
+            } catch (Exception e) {
+                LOGGER.warn("Failed writing to {}: {} {}", output, e.getClass().getSimpleName(), e.getMessage());
+                throw e;
+            }
+        }
+
+    }
+
+}
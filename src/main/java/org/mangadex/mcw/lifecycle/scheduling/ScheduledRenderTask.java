@@ -1,46 +1,84 @@
 package org.mangadex.mcw.lifecycle.scheduling;
 
 import java.util.Objects;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.function.ThrowingConsumer;
 import org.springframework.util.function.ThrowingFunction;
 
+import org.mangadex.mcw.lifecycle.MCRConfigProperties.DebounceProperties;
 import org.mangadex.mcw.render.Render;
+import org.mangadex.mcw.render.Renderer;
 
 public final class ScheduledRenderTask {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledRenderTask.class);
     private static final AtomicInteger COUNTER = new AtomicInteger();
 
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(t -> new Thread(t, "rendr-" + COUNTER.getAndIncrement()));
-    private final AtomicReference<ScheduledFuture<?>> nextTick = new AtomicReference<>();
+    private final AtomicReference<Future<?>> nextTick = new AtomicReference<>();
 
-    private final ThrowingFunction<String, Render> render;
+    private final SerialLane lane;
+
+    private final Renderer render;
     private final ThrowingConsumer<String> write;
     private final long retryDelaySeconds;
+    private final DebounceProperties debounce;
+    private final SchedulingMetrics metrics;
+
+    // latest template of the current burst of changes, not rendered yet
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private String pendingTemplate;
+    private long pendingSinceNanos;
+    private Future<?> pendingFlush;
 
     private Render lastRender;
 
     public ScheduledRenderTask(
+        WatchScheduler scheduler,
         ThrowingFunction<String, Render> render,
         ThrowingConsumer<String> write,
         long retryDelaySeconds
     ) {
+        this(scheduler, (template, _) -> render.applyWithException(template), write, retryDelaySeconds);
+    }
+
+    public ScheduledRenderTask(
+        WatchScheduler scheduler,
+        Renderer render,
+        ThrowingConsumer<String> write,
+        long retryDelaySeconds
+    ) {
+        this(scheduler, render, write, retryDelaySeconds, DebounceProperties.NONE, new SchedulingMetrics());
+    }
+
+    /**
+     * @param scheduler scheduler shared by all render tasks, on which renders of this task run one at a time
+     * @param debounce  how bursts of template changes are coalesced, so that only the latest template of a burst is rendered
+     */
+    public ScheduledRenderTask(
+        WatchScheduler scheduler,
+        Renderer render,
+        ThrowingConsumer<String> write,
+        long retryDelaySeconds,
+        DebounceProperties debounce,
+        SchedulingMetrics metrics
+    ) {
+        this.lane = scheduler.newLane("rendr-" + COUNTER.getAndIncrement());
         this.render = render;
         this.write = write;
         this.retryDelaySeconds = retryDelaySeconds;
+        this.debounce = debounce;
+        this.metrics = metrics;
     }
 
     public void stop() {
-        executor.shutdownNow();
+        lane.shutdownNow();
     }
 
     public void templateChanged(String template) {
@@ -48,35 +86,121 @@ public final class ScheduledRenderTask {
             nextTick.get().cancel(true);
         }
 
-        if (executor.isShutdown()) {
+        if (lane.isShutdown()) {
             LOGGER.info("Render task is shutting down, ignoring template change...");
             return;
         }
-        executor.submit(() -> renderWriteAndSchedule(template));
+
+        try {
+            pendingLock.lock();
+            long now = System.nanoTime();
+            if (pendingTemplate != null) {
+                LOGGER.debug("Coalescing template change with the pending one");
+                metrics.templateChangeCoalesced();
+                pendingFlush.cancel(false);
+            } else {
+                pendingSinceNanos = now;
+            }
+            pendingTemplate = template;
+
+            // every change restarts the window, up to the max latency since the first change of the burst
+            long delayNanos = Math.min(debounce.window().toNanos(), pendingSinceNanos + debounce.maxLatency().toNanos() - now);
+            pendingFlush = delayNanos > 0
+                ? lane.schedule(this::renderPending, delayNanos, TimeUnit.NANOSECONDS)
+                : lane.submit(this::renderPending);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private void renderPending() {
+        String template;
+        try {
+            pendingLock.lock();
+            template = pendingTemplate;
+            pendingTemplate = null;
+        } finally {
+            pendingLock.unlock();
+        }
+        if (template == null) {
+            return;
+        }
+
+        // a render of the previous template may have scheduled its next tick after the change cancelled it
+        var tick = nextTick.get();
+        if (tick != null) {
+            tick.cancel(false);
+        }
+        metrics.templateChangeRendered();
+        renderWriteAndSchedule(template, true);
+    }
+
+    /**
+     * Writes the last render again without rendering, ie for outputs added after it was written, and retries until that succeeds. Writers
+     * are expected to skip outputs which are already up to date.
+     */
+    public void redeliver() {
+        if (lane.isShutdown()) {
+            LOGGER.info("Render task is shutting down, ignoring redelivery...");
+            return;
+        }
+        lane.submit(this::writeLastRender);
+    }
+
+    private void writeLastRender() {
+        if (lastRender == null) {
+            // nothing rendered yet, the first render writes to every output
+            return;
+        }
+        try {
+            write.accept(lastRender.rendered());
+        } catch (Exception e) {
+            LOGGER.error("Failed writing last render again", e);
+            lane.schedule(this::writeLastRender, retryDelaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Refreshes of the same template report which pools changed, which spares comparing whole rendered outputs. A template change however
+     * may or may not change the output, so it is compared in full.
+     */
+    private boolean changed(Render render, boolean templateChanged) {
+        if (lastRender == null) {
+            return true;
+        }
+        if (templateChanged || render.changes() == null) {
+            return !Objects.equals(lastRender.rendered(), render.rendered());
+        }
+        return !render.changes().isEmpty();
     }
 
-    private void renderWriteAndSchedule(String template) {
-        if (executor.isShutdown()) {
+    private void renderWriteAndSchedule(String template, boolean templateChanged) {
+        if (lane.isShutdown()) {
             return;
         }
 
         long nextScheduleSeconds;
+        boolean nextTemplateChanged = false;
         try {
-            Render render = this.render.applyWithException(template);
-            if (lastRender == null || !Objects.equals(lastRender.rendered(), render.rendered())) {
+            Render render = this.render.render(template, lastRender);
+            if (changed(render, templateChanged)) {
                 LOGGER.info("Configuration changed: {} -> {}", lastRender == null ? "null" : lastRender.md5sum(), render.md5sum());
                 write.accept(render.rendered());
-                lastRender = render;
             } else {
                 LOGGER.debug("Configuration left unchanged after rendering");
             }
+            // kept even when unchanged, as it carries the latest expiry of every name it depends on
+            lastRender = render;
             nextScheduleSeconds = render.ttl();
         } catch (Exception e) {
             LOGGER.error("Failed rendering template", e);
             nextScheduleSeconds = retryDelaySeconds;
+            // the last render may still be of a previous template, so its output must be compared in full
+            nextTemplateChanged = templateChanged;
         }
 
-        nextTick.set(executor.schedule(() -> renderWriteAndSchedule(template), nextScheduleSeconds, TimeUnit.SECONDS));
+        var retryTemplateChanged = nextTemplateChanged;
+        nextTick.set(lane.schedule(() -> renderWriteAndSchedule(template, retryTemplateChanged), nextScheduleSeconds, TimeUnit.SECONDS));
     }
 
 }
@@ -0,0 +1,38 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SchedulingMetrics implements MeterBinder {
+
+    private final LongAdder changesRendered = new LongAdder();
+    private final LongAdder changesCoalesced = new LongAdder();
+
+    public void templateChangeRendered() {
+        changesRendered.increment();
+    }
+
+    public void templateChangeCoalesced() {
+        changesCoalesced.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mcw.template.changes", changesRendered, LongAdder::sum).tag("result", "rendered").register(registry);
+        FunctionCounter.builder("mcw.template.changes", changesCoalesced, LongAdder::sum).tag("result", "coalesced").register(registry);
+    }
+
+    public long changesRendered() {
+        return changesRendered.sum();
+    }
+
+    public long changesCoalesced() {
+        return changesCoalesced.sum();
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tasks of a single watch or render, run one at a time and in submission order on the virtual threads of a {@link WatchScheduler}.
+ * <p>
+ * Behaves like a single threaded scheduled executor: cancelling a running task interrupts it, and once shut down, queued and delayed tasks
+ * are dropped and new ones ignored. No thread is held while the lane is idle.
+ */
+public final class SerialLane {
+
+    private final WatchScheduler scheduler;
+    private final String name;
+
+    private final Queue<FutureTask<?>> queue = new ConcurrentLinkedQueue<>();
+    private final Set<DelayedTask> delayed = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile FutureTask<?> running;
+    private volatile boolean shutdown = false;
+
+    SerialLane(WatchScheduler scheduler, String name) {
+        this.scheduler = scheduler;
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Future<?> submit(Runnable task) {
+        var future = new FutureTask<Void>(task, null);
+        enqueue(future);
+        return future;
+    }
+
+    public Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        var future = new DelayedTask(task);
+        // tracked before the tick exists, so that a tick firing right away cannot leave it behind
+        delayed.add(future);
+        future.tick = scheduler.delay(
+            () -> {
+                delayed.remove(future);
+                enqueue(future);
+            },
+            delay,
+            unit
+        );
+        if (shutdown) {
+            future.cancel(false);
+        }
+        return future;
+    }
+
+    public void shutdownNow() {
+        shutdown = true;
+        delayed.forEach(task -> task.cancel(false));
+        FutureTask<?> queued;
+        while ((queued = queue.poll()) != null) {
+            queued.cancel(false);
+        }
+        var current = running;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void enqueue(FutureTask<?> task) {
+        if (shutdown) {
+            task.cancel(false);
+            return;
+        }
+        queue.add(task);
+        if (draining.compareAndSet(false, true)) {
+            scheduler.dispatch(name, this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            FutureTask<?> task;
+            while ((task = queue.poll()) != null) {
+                if (shutdown) {
+                    task.cancel(false);
+                    continue;
+                }
+                running = task;
+                task.run();
+                running = null;
+                // a task cancelled while it was running must not leave the next one interrupted
+                Thread.interrupted();
+            }
+            draining.set(false);
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private final class DelayedTask extends FutureTask<Void> {
+
+        private volatile ScheduledFuture<?> tick;
+
+        private DelayedTask(Runnable task) {
+            super(task, null);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            var scheduled = tick;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            delayed.remove(this);
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Process-wide scheduler of watches and renders.
+ * <p>
+ * A single platform thread keeps track of when tasks are due, and hands them over to virtual threads to run on. Every watch and render task
+ * gets its own {@link SerialLane}, so that its tasks never overlap, regardless of how many lanes share the scheduler.
+ */
+@Component
+public class WatchScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchScheduler.class);
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    public WatchScheduler() {
+        var counter = new AtomicInteger();
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            var thread = new Thread(r, "sched-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // cancelled ticks (ie on every template change) would otherwise linger in the queue until they are due
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @param name name given to the threads the lane's tasks run on
+     */
+    public SerialLane newLane(String name) {
+        return new SerialLane(this, name);
+    }
+
+    /**
+     * @return number of delayed tasks waiting to be due, across all lanes
+     */
+    public int pending() {
+        return timer.getQueue().size();
+    }
+
+    ScheduledFuture<?> delay(Runnable dispatch, long delay, TimeUnit unit) {
+        return timer.schedule(dispatch, delay, unit);
+    }
+
+    void dispatch(String name, Runnable task) {
+        Thread.ofVirtual().name(name).start(task);
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Shutting down watch scheduler with {} pending tasks", pending());
+        timer.shutdownNow();
+    }
+
+}
@@ -1,7 +1,15 @@
 package org.mangadex.mcw.output;
 
+import jakarta.annotation.Nullable;
+
 public interface Writer<T extends Output> {
 
     void flush(T target, String rendered) throws Exception;
 
+    /**
+     * @return md5 sum of what the target currently holds, if it is exactly what flushing it would leave it with, otherwise null
+     */
+    @Nullable
+    String checksum(T target);
+
 }
@@ -0,0 +1,50 @@
+package org.mangadex.mcw.output.file;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import jakarta.validation.constraints.NotNull;
+
+import org.springframework.validation.annotation.Validated;
+
+import org.mangadex.mcw.lifecycle.dsn.Dsn;
+import org.mangadex.mcw.output.Output;
+import org.mangadex.mcw.output.file.FSOutput.Attributes;
+
+/**
+ * A directory mirroring the templates of a directory source, each rendered to a file of the same name, as in
+ * {@code file:///etc/mcrouter/configs/?mode=0640}
+ */
+@Validated
+public record FSDirectoryOutput(
+    @NotNull Path directory,
+    @NotNull @Validated Attributes attributes
+) implements Output {
+
+    public FSDirectoryOutput {
+        if (!directory.isAbsolute()) {
+            throw new IllegalArgumentException("Path must be absolute: " + directory);
+        }
+    }
+
+    /**
+     * @return whether the DSN is of a directory, ie ends with a slash
+     */
+    public static boolean isDirectory(Dsn dsn) {
+        return dsn.value().endsWith("/");
+    }
+
+    public static FSDirectoryOutput parse(Dsn dsn) {
+        if (!"file".equals(dsn.protocol())) {
+            throw new IllegalArgumentException("Cannot parse file output for output with type '" + dsn.protocol() + "'");
+        }
+        return new FSDirectoryOutput(Paths.get(dsn.value()), Attributes.parse(dsn.parameters()));
+    }
+
+    /**
+     * @return the output of a template of the source directory
+     */
+    public FSOutput resolve(Path template) {
+        return new FSOutput(directory.resolve(template.getFileName()), attributes);
+    }
+
+}
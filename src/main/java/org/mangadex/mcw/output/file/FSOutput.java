@@ -4,6 +4,8 @@ import static java.lang.Integer.parseInt;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
 
@@ -40,30 +42,7 @@ public record FSOutput(
             throw new IllegalArgumentException("Path must be absolute: " + path);
         }
 
-        var attributes = Attributes.DEFAULT;
-        var parameters = dsn.parameters();
-        for (String key : parameters.keySet()) {
-            if ("uid".equals(key)) {
-                attributes = new Attributes(
-                    parseInt(parameters.get("uid").getFirst()),
-                    attributes.gid(),
-                    attributes.mode()
-                );
-            } else if ("gid".equals(key)) {
-                attributes = new Attributes(
-                    attributes.uid(),
-                    parseInt(parameters.get("gid").getFirst()),
-                    attributes.mode()
-                );
-            } else if ("mode".equals(key)) {
-                attributes = new Attributes(
-                    attributes.uid(),
-                    attributes.gid(),
-                    parseInt(parameters.get("mode").getFirst(), 8)
-                );
-            }
-        }
-
+        var attributes = Attributes.parse(dsn.parameters());
         return new FSOutput(path, attributes);
     }
 
@@ -91,6 +70,32 @@ public record FSOutput(
             0644
         );
 
+        public static Attributes parse(Map<String, List<String>> parameters) {
+            var attributes = Attributes.DEFAULT;
+            for (String key : parameters.keySet()) {
+                if ("uid".equals(key)) {
+                    attributes = new Attributes(
+                        parseInt(parameters.get("uid").getFirst()),
+                        attributes.gid(),
+                        attributes.mode()
+                    );
+                } else if ("gid".equals(key)) {
+                    attributes = new Attributes(
+                        attributes.uid(),
+                        parseInt(parameters.get("gid").getFirst()),
+                        attributes.mode()
+                    );
+                } else if ("mode".equals(key)) {
+                    attributes = new Attributes(
+                        attributes.uid(),
+                        attributes.gid(),
+                        parseInt(parameters.get("mode").getFirst(), 8)
+                    );
+                }
+            }
+            return attributes;
+        }
+
         public int modeOrThrow() {
             if (mode == null) {
                 throw new IllegalArgumentException("Unix file mode was not specified");
@@ -14,10 +14,12 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import jakarta.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 
 import org.mangadex.mcw.output.Writer;
 import org.mangadex.mcw.source.file.FSWriteMethod;
@@ -57,6 +59,38 @@ public class FSWriter implements Writer<FSOutput> {
         }
     }
 
+    /**
+     * Lets the first render after a restart skip writing outputs which already hold it, so that mcrouter does not reload them needlessly.
+     * Files whose ownership or mode differ from the target's are reported as unknown, so that they get written and fixed.
+     */
+    @Nullable
+    @Override
+    public String checksum(FSOutput target) {
+        var path = target.path();
+        try {
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            var attributes = target.attributes();
+            if (attributes.mode() != null && !Files.getPosixFilePermissions(path).equals(toPermissions(attributes.mode()))) {
+                LOGGER.debug("Existing output {} has a different mode", target);
+                return null;
+            }
+            if (attributes.uid() != null && !attributes.uid().equals(Files.getAttribute(path, "unix:uid"))) {
+                LOGGER.debug("Existing output {} has a different owner", target);
+                return null;
+            }
+            if (attributes.gid() != null && !attributes.gid().equals(Files.getAttribute(path, "unix:gid"))) {
+                LOGGER.debug("Existing output {} has a different group", target);
+                return null;
+            }
+            return DigestUtils.md5DigestAsHex(Files.readAllBytes(path));
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Unable to checksum existing output {}: {} {}", target, e.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
     private Path tempFile(FSOutput target, FSWriteMethod method) throws IOException {
         var path = target.path();
         var id = now().toEpochSecond(UTC) + "-" + randomUUID();
@@ -0,0 +1,32 @@
+package org.mangadex.mcw.render;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Membership change of a pool between two renders. Both lists may be empty if only the order of its servers changed.
+ *
+ * @param pool    the name of the pool in the template
+ * @param added   servers which were not in the pool before
+ * @param removed servers which are not in the pool anymore
+ */
+public record PoolChange(
+    String pool,
+    List<String> added,
+    List<String> removed
+) {
+
+    public static PoolChange between(@Nullable RenderedPool previous, RenderedPool current) {
+        var previousServers = previous == null ? List.<String>of() : previous.servers();
+
+        var previousSet = new HashSet<>(previousServers);
+        var currentSet = new HashSet<>(current.servers());
+
+        var added = current.servers().stream().filter(server -> !previousSet.contains(server)).toList();
+        var removed = previousServers.stream().filter(server -> !currentSet.contains(server)).toList();
+        return new PoolChange(current.name(), added, removed);
+    }
+
+}
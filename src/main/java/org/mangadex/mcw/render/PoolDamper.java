@@ -0,0 +1,148 @@
+package org.mangadex.mcw.render;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.mangadex.mcw.render.PoolDamping.PendingServer;
+
+/**
+ * Applies hysteresis to the membership of pools: a server must be missing from a number of consecutive resolutions (or for some time) before
+ * it is removed from its pool, and may have to be present for some time before it is added to it.
+ */
+@Component
+public class PoolDamper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoolDamper.class);
+
+    private final RenderProperties renderProperties;
+    private final RenderMetrics metrics;
+
+    public PoolDamper(RenderProperties renderProperties, RenderMetrics metrics) {
+        this.renderProperties = renderProperties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param pool     the name of the pool
+     * @param previous the servers of the pool as last rendered, or null if it was never rendered
+     * @param state    the changes held back on the last render
+     * @param current  the servers of the pool as just resolved
+     * @param now      the time of the resolution
+     */
+    public DampedPool damp(String pool, @Nullable List<String> previous, PoolDamping state, List<String> current, long now) {
+        var settings = renderProperties.damping();
+        if (!settings.enabled() || previous == null) {
+            return new DampedPool(current, PoolDamping.NONE);
+        }
+
+        var currentSet = new HashSet<>(current);
+        var previousSet = new HashSet<>(previous);
+
+        var removals = new HashMap<String, PendingServer>();
+        for (var server : new LinkedHashSet<>(previous)) {
+            if (currentSet.contains(server)) {
+                continue;
+            }
+
+            var pending = state.removals().get(server);
+            var next = pending == null ? new PendingServer(now, 1) : pending.next();
+            if (next.resolutions() >= settings.removeAfterResolutions() || now - next.sinceMillis() >= settings.removeAfter().toMillis()) {
+                metrics.removalApplied();
+                continue;
+            }
+
+            if (pending == null) {
+                LOGGER.info("Holding back removal of {} from pool[{}]", server, pool);
+                metrics.removalSuppressed();
+            }
+            removals.put(server, next);
+        }
+
+        var additions = new HashMap<String, PendingServer>();
+        for (var server : new LinkedHashSet<>(current)) {
+            if (previousSet.contains(server)) {
+                continue;
+            }
+
+            var pending = state.additions().get(server);
+            var next = pending == null ? new PendingServer(now, 1) : pending.next();
+            if (now - next.sinceMillis() >= settings.addAfter().toMillis()) {
+                metrics.additionApplied();
+                continue;
+            }
+
+            if (pending == null) {
+                LOGGER.info("Holding back addition of {} to pool[{}]", server, pool);
+                metrics.additionSuppressed();
+            }
+            additions.put(server, next);
+        }
+
+        if (removals.isEmpty() && additions.isEmpty()) {
+            return new DampedPool(current, PoolDamping.NONE);
+        }
+
+        var servers = new ArrayList<String>(current.size() + removals.size());
+        for (var server : current) {
+            if (!additions.containsKey(server)) {
+                servers.add(server);
+            }
+        }
+
+        // servers held back from removal go right after the server that preceded them, so that their position does not change
+        for (int i = 0; i < previous.size(); i++) {
+            var server = previous.get(i);
+            if (!removals.containsKey(server)) {
+                continue;
+            }
+
+            int at = 0;
+            for (int j = i - 1; j >= 0; j--) {
+                int predecessor = servers.indexOf(previous.get(j));
+                if (predecessor >= 0) {
+                    at = predecessor + 1;
+                    break;
+                }
+            }
+            servers.add(at, server);
+        }
+
+        return new DampedPool(servers, new PoolDamping(removals, additions));
+    }
+
+    /**
+     * @return in how many milliseconds the earliest change held back by time will be due, if any
+     */
+    public long nextDueMillis(PoolDamping state, long now) {
+        var settings = renderProperties.damping();
+
+        long due = Long.MAX_VALUE;
+        for (var pending : state.removals().values()) {
+            due = min(due, pending.sinceMillis() + settings.removeAfter().toMillis() - now);
+        }
+        for (var pending : state.additions().values()) {
+            due = min(due, pending.sinceMillis() + settings.addAfter().toMillis() - now);
+        }
+        return due;
+    }
+
+    /**
+     * @param servers the servers to render in the pool
+     * @param damping the changes held back
+     */
+    public record DampedPool(
+        List<String> servers,
+        PoolDamping damping
+    ) { }
+
+}
@@ -0,0 +1,37 @@
+package org.mangadex.mcw.render;
+
+import java.util.Map;
+
+/**
+ * Membership changes of a pool which are held back until confirmed, carried from one render to the next.
+ *
+ * @param removals  servers missing from the latest resolutions, but still rendered in the pool
+ * @param additions servers present in the latest resolutions, but not rendered in the pool yet
+ */
+public record PoolDamping(
+    Map<String, PendingServer> removals,
+    Map<String, PendingServer> additions
+) {
+
+    public static final PoolDamping NONE = new PoolDamping(Map.of(), Map.of());
+
+    public boolean isEmpty() {
+        return removals.isEmpty() && additions.isEmpty();
+    }
+
+    /**
+     * @param sinceMillis when the change was first seen
+     * @param resolutions number of consecutive resolutions the change was seen in
+     */
+    public record PendingServer(
+        long sinceMillis,
+        int resolutions
+    ) {
+
+        PendingServer next() {
+            return new PendingServer(sinceMillis, resolutions + 1);
+        }
+
+    }
+
+}
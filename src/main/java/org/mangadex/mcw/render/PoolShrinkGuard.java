@@ -0,0 +1,127 @@
+package org.mangadex.mcw.render;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the last rendered servers of pools which would otherwise shrink too much in a single render, as happens when a nameserver briefly
+ * returns truncated or empty answers, and reports them as a health warning for as long as they are held.
+ * <p>
+ * Pool names repeat across templates, so whether a pool is held is carried on its rendered pool (see {@link RenderedPool#held()}) from one
+ * render of a template to the next, and holds are only tracked process-wide by their own id for health reporting.
+ */
+@Component
+public class PoolShrinkGuard implements HealthIndicator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PoolShrinkGuard.class);
+
+    public static final Status WARNING = new Status("WARNING", "Some pools shrank beyond their limits, and are held at their last servers");
+
+    private final RenderProperties renderProperties;
+    private final RenderMetrics metrics;
+    private final Clock clock;
+
+    private final Map<Long, HeldPool> held = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @Autowired
+    public PoolShrinkGuard(RenderProperties renderProperties, RenderMetrics metrics) {
+        this(renderProperties, metrics, Clock.systemUTC());
+    }
+
+    PoolShrinkGuard(RenderProperties renderProperties, RenderMetrics metrics, Clock clock) {
+        this.renderProperties = renderProperties;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    /**
+     * @param pool     the name of the pool
+     * @param previous the servers of the pool as last rendered, or null if it was never rendered
+     * @param hold     how the pool was held as last rendered, or null if it was not
+     * @param current  the servers the pool would be rendered with
+     * @return the servers to render the pool with, and how it is held if it is
+     */
+    public Guarded guard(String pool, @Nullable List<String> previous, @Nullable HeldPool hold, List<String> current) {
+        var settings = renderProperties.shrinkGuard();
+        if (!settings.enabled() || previous == null || current.size() >= previous.size()) {
+            release(hold);
+            return new Guarded(current, null);
+        }
+
+        var limits = settings.limits(pool);
+        var shrinkRatio = (double) (previous.size() - current.size()) / previous.size();
+        if (current.size() >= limits.minServers() && shrinkRatio <= limits.maxShrinkRatio()) {
+            release(hold);
+            return new Guarded(current, null);
+        }
+
+        metrics.shrinkGuarded();
+        var heldPool = hold == null
+            ? new HeldPool(ids.incrementAndGet(), pool, previous.size(), current.size(), Instant.now(clock))
+            : new HeldPool(hold.id(), pool, previous.size(), current.size(), hold.since());
+        held.put(heldPool.id(), heldPool);
+        LOGGER.warn(
+            "Pool[{}] would shrink from {} to {} servers (limits: min={}, maxShrinkRatio={}), keeping its last servers since {}",
+            pool,
+            previous.size(),
+            current.size(),
+            limits.minServers(),
+            limits.maxShrinkRatio(),
+            heldPool.since()
+        );
+        return new Guarded(previous, heldPool);
+    }
+
+    @Override
+    public Health health() {
+        if (held.isEmpty()) {
+            return Health.up().build();
+        }
+        return Health.status(WARNING).withDetail("held", List.copyOf(held.values())).build();
+    }
+
+    private void release(@Nullable HeldPool hold) {
+        if (hold != null && held.remove(hold.id()) != null) {
+            LOGGER.info("Pool[{}] is back within its shrink limits", hold.pool());
+        }
+    }
+
+    /**
+     * @param servers the servers to render the pool with
+     * @param held    how the pool is held at its last servers, or null if it is not
+     */
+    public record Guarded(
+        List<String> servers,
+        @Nullable HeldPool held
+    ) { }
+
+    /**
+     * @param id       identifies the hold, which lasts across renders of the same template for as long as the pool is held
+     * @param pool     the name of the pool
+     * @param servers  number of servers the pool is held at
+     * @param resolved number of servers the pool was last resolved to
+     * @param since    when the pool was first held
+     */
+    public record HeldPool(
+        long id,
+        String pool,
+        int servers,
+        int resolved,
+        Instant since
+    ) { }
+
+}
@@ -3,23 +3,79 @@ package org.mangadex.mcw.render;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.util.DigestUtils.md5DigestAsHex;
 
+import java.util.List;
+import java.util.Map;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
 
+import org.jetbrains.annotations.Nullable;
 import org.springframework.validation.annotation.Validated;
 
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.render.template.CompiledTemplate;
+
+/**
+ * @param dependencies every DNS lookup the render depends on, with the answer it was rendered from
+ * @param template     the compiled form of the template it was rendered from, reused by later renders of the same template
+ * @param pools        the rendered pools, in template order
+ * @param changes      the pools which changed since the previous render of the same template (every pool if there was none), or null if
+ *                     unknown, in which case only comparing rendered contents tells whether it changed
+ */
 @Validated
 public record Render(
     @NotNull String rendered,
     @PositiveOrZero long ttl,
-    @NotNull String md5sum
+    @NotNull String md5sum,
+    @NotNull Map<DnsRequest, RenderDependency> dependencies,
+    @Nullable CompiledTemplate template,
+    @NotNull List<RenderedPool> pools,
+    @Nullable List<PoolChange> changes
 ) {
 
     public Render(
         @NotNull String rendered,
         @PositiveOrZero long ttl
     ) {
-        this(rendered, ttl, md5DigestAsHex(rendered.getBytes(UTF_8)));
+        this(rendered, ttl, md5DigestAsHex(rendered.getBytes(UTF_8)), Map.of(), null, List.of(), null);
+    }
+
+    public Render(
+        @NotNull String rendered,
+        @PositiveOrZero long ttl,
+        @NotNull Map<DnsRequest, RenderDependency> dependencies,
+        @Nullable CompiledTemplate template,
+        @NotNull List<RenderedPool> pools,
+        @NotNull List<PoolChange> changes
+    ) {
+        this(rendered, ttl, md5DigestAsHex(rendered.getBytes(UTF_8)), dependencies, template, pools, changes);
+    }
+
+    /**
+     * @return this same render with no changes, updated with fresher dependencies and their TTL
+     */
+    public Render unchanged(long ttl, Map<DnsRequest, RenderDependency> dependencies) {
+        return unchanged(ttl, dependencies, pools);
+    }
+
+    /**
+     * @return this same render with no changes, updated with fresher dependencies and their TTL, and the latest state of its pools
+     */
+    public Render unchanged(long ttl, Map<DnsRequest, RenderDependency> dependencies, List<RenderedPool> pools) {
+        return new Render(rendered, ttl, md5sum, dependencies, template, pools, List.of());
+    }
+
+    /**
+     * @return the names of the pools which failed resolving, and were rendered from their last known servers instead
+     */
+    public List<String> degradedPools() {
+        return pools.stream().filter(pool -> pool.degradedSince() != null).map(RenderedPool::name).toList();
+    }
+
+    /**
+     * @return whether some pool membership changes were held back from this render, and are yet to be confirmed
+     */
+    public boolean damped() {
+        return pools.stream().anyMatch(pool -> !pool.damping().isEmpty());
     }
 
 }
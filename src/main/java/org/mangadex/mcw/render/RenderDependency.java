@@ -0,0 +1,12 @@
+package org.mangadex.mcw.render;
+
+import java.util.List;
+
+/**
+ * @param answer          the rdata of the answer records, in the order they were rendered
+ * @param expiresAtMillis when the answer expires, and should be looked up again
+ */
+public record RenderDependency(
+    List<String> answer,
+    long expiresAtMillis
+) { }
@@ -0,0 +1,90 @@
+package org.mangadex.mcw.render;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+@Component
+public class RenderMetrics implements MeterBinder {
+
+    private final LongAdder removalsApplied = new LongAdder();
+    private final LongAdder removalsSuppressed = new LongAdder();
+    private final LongAdder additionsApplied = new LongAdder();
+    private final LongAdder additionsSuppressed = new LongAdder();
+    private final LongAdder shrinksGuarded = new LongAdder();
+    private final LongAdder namesResolved = new LongAdder();
+    private final LongAdder namesGlued = new LongAdder();
+
+    public void removalApplied() {
+        removalsApplied.increment();
+    }
+
+    public void removalSuppressed() {
+        removalsSuppressed.increment();
+    }
+
+    public void additionApplied() {
+        additionsApplied.increment();
+    }
+
+    public void additionSuppressed() {
+        additionsSuppressed.increment();
+    }
+
+    public void shrinkGuarded() {
+        shrinksGuarded.increment();
+    }
+
+    public void nameResolved() {
+        namesResolved.increment();
+    }
+
+    public void nameGlued() {
+        namesGlued.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mcw.render.pool.changes", removalsApplied, LongAdder::sum).tag("change", "removal").tag("result", "applied").register(registry);
+        FunctionCounter.builder("mcw.render.pool.changes", removalsSuppressed, LongAdder::sum).tag("change", "removal").tag("result", "suppressed").register(registry);
+        FunctionCounter.builder("mcw.render.pool.changes", additionsApplied, LongAdder::sum).tag("change", "addition").tag("result", "applied").register(registry);
+        FunctionCounter.builder("mcw.render.pool.changes", additionsSuppressed, LongAdder::sum).tag("change", "addition").tag("result", "suppressed").register(registry);
+        FunctionCounter.builder("mcw.render.pool.shrink.guarded", shrinksGuarded, LongAdder::sum).register(registry);
+        // names renders needed the addresses of, whether through the resolver (and so its cache) or from SRV glue; upstream queries are
+        // counted by the DNS cache instead, as its misses
+        FunctionCounter.builder("mcw.render.names", namesResolved, LongAdder::sum).tag("source", "resolver").register(registry);
+        FunctionCounter.builder("mcw.render.names", namesGlued, LongAdder::sum).tag("source", "glue").register(registry);
+    }
+
+    public long removalsApplied() {
+        return removalsApplied.sum();
+    }
+
+    public long removalsSuppressed() {
+        return removalsSuppressed.sum();
+    }
+
+    public long additionsApplied() {
+        return additionsApplied.sum();
+    }
+
+    public long additionsSuppressed() {
+        return additionsSuppressed.sum();
+    }
+
+    public long shrinksGuarded() {
+        return shrinksGuarded.sum();
+    }
+
+    public long namesResolved() {
+        return namesResolved.sum();
+    }
+
+    public long namesGlued() {
+        return namesGlued.sum();
+    }
+
+}
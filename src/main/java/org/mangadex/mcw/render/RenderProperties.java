@@ -1,7 +1,13 @@
 package org.mangadex.mcw.render;
 
+import java.time.Duration;
+import java.util.Map;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 
 import org.jetbrains.annotations.Range;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -11,18 +17,92 @@ import org.springframework.validation.annotation.Validated;
  * Templating settings
  *
  * @param defaultPort default port for DNS A based resolution if not specified (ie dns://host form, rather than dns+port://host)
+ * @param concurrency maximum number of DNS lookups in flight at once while rendering a single template (1 resolves tokens one by one)
+ * @param mode        how templates are parsed when they change, either as a whole json tree or streamed token by token (for very large templates)
+ * @param ordering    how the servers resolved from a single token are ordered, either as the nameserver answered or canonically, and whether
+ *                    servers keep the position they had in their pool on previous renders (to limit consistent hashing remappings)
+ * @param damping     hysteresis applied to changes of pool membership, to avoid rewriting configurations when servers briefly flap
+ * @param shrinkGuard limits to how much pools may shrink at once, to avoid publishing truncated or empty answers
+ * @param fallback    how pools which fail resolving fall back to their last known servers, without failing the whole render
  */
 @Validated
 @ConfigurationProperties(prefix = "org.mangadex.mcw.render")
 public record RenderProperties(
     @Range(from = 1, to = 65535) int defaultPort,
-    @NotNull @Validated RenderTTL ttl
+    @NotNull @Validated RenderTTL ttl,
+    @Positive int concurrency,
+    @NotNull RenderMode mode,
+    @NotNull Ordering ordering,
+    @NotNull @Validated RenderDamping damping,
+    @NotNull @Validated RenderShrinkGuard shrinkGuard,
+    @NotNull @Validated RenderFallback fallback
 ) {
 
+    public enum Ordering {
+        RESOLVED,
+        CANONICAL,
+        SLOT_STABLE,
+    }
+
+    public enum RenderMode {
+        TREE,
+        STREAMING,
+    }
+
     @Validated
     public record RenderTTL(
         @Positive long min,
         @Positive long max
     ) { }
 
+    /**
+     * @param enabled                whether to hold back pool membership changes until they are confirmed
+     * @param removeAfterResolutions number of consecutive resolutions a server must be missing from before it is removed from its pool
+     * @param removeAfter            time a server must be missing for before it is removed from its pool, whichever comes first
+     * @param addAfter               time a server must be present for before it is added to its pool (zero adds servers immediately)
+     */
+    @Validated
+    public record RenderDamping(
+        boolean enabled,
+        @Positive int removeAfterResolutions,
+        @NotNull Duration removeAfter,
+        @NotNull Duration addAfter
+    ) { }
+
+    /**
+     * @param enabled whether pools which fail resolving keep their last rendered servers, rather than failing the whole render
+     * @param maxAge  how long a pool may keep its last rendered servers for, after which it is rendered from the servers which still resolve
+     */
+    @Validated
+    public record RenderFallback(
+        boolean enabled,
+        @NotNull Duration maxAge
+    ) { }
+
+    /**
+     * @param enabled        whether to keep the last rendered servers of pools which would otherwise shrink beyond their limits
+     * @param minServers     number of servers a pool may not shrink below (0 for no minimum)
+     * @param maxShrinkRatio fraction of its servers a pool may lose in a single render (1 for no limit)
+     * @param pools          limits of specific pools, by pool name, instead of the above
+     */
+    @Validated
+    public record RenderShrinkGuard(
+        boolean enabled,
+        @PositiveOrZero int minServers,
+        @DecimalMin("0.0") @DecimalMax("1.0") double maxShrinkRatio,
+        @NotNull Map<String, @Valid ShrinkLimits> pools
+    ) {
+
+        public ShrinkLimits limits(String pool) {
+            return pools.getOrDefault(pool, new ShrinkLimits(minServers, maxShrinkRatio));
+        }
+
+    }
+
+    @Validated
+    public record ShrinkLimits(
+        @PositiveOrZero int minServers,
+        @DecimalMin("0.0") @DecimalMax("1.0") double maxShrinkRatio
+    ) { }
+
 }
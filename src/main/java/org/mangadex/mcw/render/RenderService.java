@@ -2,98 +2,304 @@ package org.mangadex.mcw.render;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static java.util.Comparator.comparing;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toMap;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.TextNode;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.SRVRecord;
 import org.xbill.DNS.Type;
 
 import org.mangadex.mcw.dns.DnsResolver;
+import org.mangadex.mcw.dns.InFlightLimiter;
+import org.mangadex.mcw.dns.cache.DnsCacheSnapshot;
 import org.mangadex.mcw.dns.request.DnsRequest;
 import org.mangadex.mcw.dns.request.RequestType;
 import org.mangadex.mcw.dns.response.DnsResolutionFailure;
 import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
-import org.mangadex.mcw.render.template.InvalidTemplateException;
+import org.mangadex.mcw.render.RenderProperties.Ordering;
+import org.mangadex.mcw.render.template.CompiledTemplate;
 import org.mangadex.mcw.render.template.ResolvedServer;
+import org.mangadex.mcw.render.template.TemplateCompiler;
 import org.mangadex.mcw.render.template.token.DNSAToken;
 import org.mangadex.mcw.render.template.token.DNSSRVToken;
 import org.mangadex.mcw.render.template.token.FixedToken;
-import org.mangadex.mcw.render.template.token.PoolTokenizer;
 import org.mangadex.mcw.render.template.token.ServerToken;
 
 @Component
-public class RenderService {
+public class RenderService implements Renderer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RenderService.class);
 
-    private static final Comparator<SRVRecord> SRV_ORDERING = comparing(SRVRecord::getPriority).thenComparing(SRVRecord::getTarget);
+    /**
+     * Answers expiring within this delay are considered expired already, so that refreshes scheduled at second granularity do not
+     * miss the answers they were scheduled for.
+     */
+    private static final long EXPIRY_SLACK_MILLIS = 1000L;
 
     private final DnsResolver resolver;
+    private final DnsCacheSnapshot snapshot;
+    private final RenderMetrics metrics;
     private final ObjectMapper objectMapper;
-    private final PoolTokenizer tokenizer;
+    private final TemplateCompiler compiler;
+    private final PoolDamper damper;
+    private final PoolShrinkGuard shrinkGuard;
     private final RenderProperties renderProperties;
+    private final Clock clock;
+
+    @Autowired
+    public RenderService(
+        DnsResolver resolver,
+        DnsCacheSnapshot snapshot,
+        ObjectMapper objectMapper,
+        TemplateCompiler compiler,
+        PoolDamper damper,
+        PoolShrinkGuard shrinkGuard,
+        RenderProperties renderProperties,
+        RenderMetrics metrics
+    ) {
+        this(resolver, snapshot, objectMapper, compiler, damper, shrinkGuard, renderProperties, metrics, Clock.systemUTC());
+    }
 
-    public RenderService(DnsResolver resolver, ObjectMapper objectMapper, PoolTokenizer tokenizer, RenderProperties renderProperties) {
+    RenderService(
+        DnsResolver resolver,
+        DnsCacheSnapshot snapshot,
+        ObjectMapper objectMapper,
+        TemplateCompiler compiler,
+        PoolDamper damper,
+        PoolShrinkGuard shrinkGuard,
+        RenderProperties renderProperties,
+        RenderMetrics metrics,
+        Clock clock
+    ) {
         this.resolver = resolver;
+        this.snapshot = snapshot;
         this.objectMapper = objectMapper;
-        this.tokenizer = tokenizer;
+        this.compiler = compiler;
+        this.damper = damper;
+        this.shrinkGuard = shrinkGuard;
         this.renderProperties = renderProperties;
+        this.metrics = metrics;
+        this.clock = clock;
     }
 
-    public Render render(String template) throws IOException {
-        LOGGER.trace("Rendering template\n{}", template);
+    /**
+     * Refreshes a previous render of the same template, by only looking up again the names whose answers expired since. If none of these
+     * answers changed, the previous render is reused and only its TTL is updated, otherwise its compiled template is rendered again in full.
+     * <p>
+     * The answers it was rendered from are then persisted, so that the first renders after a restart do not wait on upstream resolution.
+     */
+    @Override
+    public Render render(String template, @Nullable Render previous) throws IOException {
+        var render = refresh(template, previous);
+        snapshot.save();
+        return render;
+    }
 
-        var root = objectMapper.readTree(template);
-        long minDnsTTL = Long.MAX_VALUE;
+    private Render refresh(String template, @Nullable Render previous) throws IOException {
+        // the compiled template keeps the very string it was compiled from, so that on refreshes this is an identity check
+        if (previous == null || previous.template() == null || !previous.template().source().equals(template)) {
+            return render(compiler.compile(template), previous);
+        }
+
+        if (previous.damped()) {
+            LOGGER.debug("Some pool changes are held back, rendering again in full to confirm them");
+            return render(previous.template(), previous);
+        }
+
+        if (!previous.degradedPools().isEmpty()) {
+            LOGGER.debug("Some pools are degraded, rendering again in full to recover them");
+            return render(previous.template(), previous);
+        }
+
+        if (previous.dependencies().isEmpty()) {
+            LOGGER.debug("Template has no dynamic servers, reusing previous render");
+            return previous.unchanged(previous.ttl(), previous.dependencies());
+        }
+
+        var now = clock.millis();
+        var context = new RenderContext(new InFlightLimiter(renderProperties.concurrency()));
+        var expiring = previous
+            .dependencies()
+            .entrySet()
+            .stream()
+            .filter(dependency -> dependency.getValue().expiresAtMillis() <= now + EXPIRY_SLACK_MILLIS)
+            .map(Map.Entry::getKey)
+            .toList();
+        LOGGER.debug("Refreshing {} expiring names out of {}", expiring.size(), previous.dependencies().size());
+
+        var lookups = expiring.stream().map(request -> dnsquery(request.type(), request.name(), context)).toList();
+        try {
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            LOGGER.debug("Failed refreshing expiring names, rendering again in full", e.getCause());
+            return render(previous.template(), previous);
+        }
 
-        var pools = root.get("pools");
-        if (pools == null || !pools.isObject() || pools.isEmpty()) {
-            throw new InvalidTemplateException("Cannot parse configuration template, $.pools must be non-empty object");
+        var dependencies = new HashMap<>(previous.dependencies());
+        for (var request : expiring) {
+            var refreshed = context.dependencies().get(request);
+            if (!refreshed.answer().equals(previous.dependencies().get(request).answer())) {
+                LOGGER.info("Answer for {} {} changed, rendering again", request.type(), request.name());
+                return render(previous.template(), previous);
+            }
+            dependencies.put(request, refreshed);
         }
 
-        var poolEntries = pools.fields();
-        while (poolEntries.hasNext()) {
-            var poolEntry = poolEntries.next();
-            var poolName = poolEntry.getKey();
-            var pool = poolEntry.getValue();
-            LOGGER.trace("Processing pool[{}]", poolName);
+        var renderTTL = renderTTL((dependencies.values().stream().mapToLong(RenderDependency::expiresAtMillis).min().orElseThrow() - now) / 1000L);
+        LOGGER.debug("No answer changed, reusing previous render with ttl={}s", renderTTL);
+        return previous.unchanged(renderTTL, dependencies);
+    }
+
+    public Render render(String template) throws IOException {
+        return render(compiler.compile(template), null);
+    }
+
+    /**
+     * Pools whose servers are the same as in the previous render of the same compiled template reuse their serialized servers, and if no
+     * pool changed at all, so does the whole rendered output. The previous render may also be of another template, in which case it is
+     * only used to carry over the membership state of its pools (changes held back, and positions if the ordering asks for it) by name.
+     */
+    private Render render(CompiledTemplate template, @Nullable Render previous) {
+        var previousPools = previous != null && previous.template() == template ? previous.pools() : List.<RenderedPool>of();
+        var previousPoolsByName = previous == null ? Map.<String, RenderedPool>of() : previous
+            .pools()
+            .stream()
+            .collect(toMap(RenderedPool::name, identity(), (first, _) -> first));
 
-            var serverTokens = tokenizer.tokenize(poolName, pool);
-            LOGGER.trace("Tokenized pool[{}]->servers into {}", poolName, serverTokens);
+        // fan out the lookups of all pools at once, and only wait for them while assembling pools in order
+        var context = new RenderContext(new InFlightLimiter(renderProperties.concurrency()));
+        var pendingPools = template
+            .pools()
+            .stream()
+            .map(pool -> new PendingPool(pool.name(), pool.tokens().stream().map(token -> resolve(token, context)).toList()))
+            .toList();
 
-            var poolServers = serverTokens.stream().map(this::resolve).flatMap(List::stream).toList();
+        var now = clock.millis();
+        long minDnsTTL = Long.MAX_VALUE;
+        long minDampingTTL = Long.MAX_VALUE;
+        var pools = new ArrayList<RenderedPool>(pendingPools.size());
+        var changes = new ArrayList<PoolChange>();
+        for (int i = 0; i < pendingPools.size(); i++) {
+            var pendingPool = pendingPools.get(i);
+            var poolName = pendingPool.name();
+
+            var lastPool = previousPoolsByName.get(poolName);
+            var resolution = awaitPool(pendingPool.servers());
+
+            Instant degradedSince = null;
+            boolean fallback = false;
+            if (resolution.failure() != null) {
+                if (lastPool == null || !renderProperties.fallback().enabled()) {
+                    throw resolution.failure();
+                }
+
+                degradedSince = lastPool.degradedSince() != null ? lastPool.degradedSince() : Instant.ofEpochMilli(now);
+                fallback = now - degradedSince.toEpochMilli() < renderProperties.fallback().maxAge().toMillis();
+                if (fallback) {
+                    LOGGER.warn("Failed resolving pool[{}], keeping its last servers (degraded since {})", poolName, degradedSince, resolution.failure());
+                } else {
+                    LOGGER.error(
+                        "Failed resolving pool[{}] for longer than {}, rendering it from the servers which still resolve (degraded since {})",
+                        poolName,
+                        renderProperties.fallback().maxAge(),
+                        degradedSince,
+                        resolution.failure()
+                    );
+                }
+            }
+
+            var poolServers = resolution.servers();
             var poolTTL = poolServers
                 .stream()
                 .mapToLong(ResolvedServer::ttl)
                 .min()
                 .orElse(Long.MAX_VALUE); // empty result, essentially
+            if (degradedSince != null) {
+                // look degraded pools up again as soon as possible
+                poolTTL = renderProperties.ttl().min();
+            }
             LOGGER.trace("Resolved pool[{}]->servers into {} (ttl={}s)", poolName, poolServers, poolTTL);
 
             minDnsTTL = min(poolTTL, minDnsTTL);
 
-            var poolHostPorts = poolServers.stream().map(ResolvedServer::value).map(TextNode::new).toList();
-            LOGGER.debug("Resolved pool[{}]->servers = {} (ttl={}s)", poolName, poolHostPorts, poolTTL);
-
-            var serversNode = pool.withArrayProperty("servers");
-            serversNode.removeAll();
-            serversNode.addAll(poolHostPorts);
+            List<String> poolHostPorts;
+            PoolDamping damping;
+            PoolShrinkGuard.HeldPool held;
+            if (fallback) {
+                poolHostPorts = lastPool.servers();
+                damping = lastPool.damping();
+                held = lastPool.held();
+            } else {
+                poolHostPorts = poolServers.stream().map(ResolvedServer::value).toList();
+                LOGGER.debug("Resolved pool[{}]->servers = {} (ttl={}s)", poolName, poolHostPorts, poolTTL);
+
+                var damped = damper.damp(
+                    poolName,
+                    lastPool == null ? null : lastPool.servers(),
+                    lastPool == null ? PoolDamping.NONE : lastPool.damping(),
+                    poolHostPorts,
+                    now
+                );
+                poolHostPorts = damped.servers();
+                damping = damped.damping();
+                minDampingTTL = min(minDampingTTL, damper.nextDueMillis(damping, now));
+
+                if (renderProperties.ordering() == Ordering.SLOT_STABLE && lastPool != null) {
+                    poolHostPorts = ServerOrdering.slotStable(lastPool.servers(), poolHostPorts);
+                }
+                var guarded = lastPool == null
+                    ? shrinkGuard.guard(poolName, null, null, poolHostPorts)
+                    : shrinkGuard.guard(poolName, lastPool.servers(), lastPool.held(), poolHostPorts);
+                poolHostPorts = guarded.servers();
+                held = guarded.held();
+            }
+
+            var previousPool = i < previousPools.size() ? previousPools.get(i) : null;
+            if (previousPool != null && previousPool.servers().equals(poolHostPorts)) {
+                pools.add(new RenderedPool(poolName, poolHostPorts, previousPool.serialized(), damping, degradedSince, held));
+                continue;
+            }
+
+            var pool = new RenderedPool(poolName, poolHostPorts, serialize(poolHostPorts), damping, degradedSince, held);
+            var change = PoolChange.between(previousPool, pool);
+            if (previousPool != null) {
+                LOGGER.info("Pool[{}] changed: added={} removed={}", poolName, change.added(), change.removed());
+            }
+            pools.add(pool);
+            changes.add(change);
         }
 
-        long minTTL = renderProperties.ttl().min();
-        long maxTTL = renderProperties.ttl().max();
-        var renderTTL = max(minTTL, min(minDnsTTL, maxTTL));
+        // changes held back for some time must be rendered again once that time elapsed, no matter the TTL of the records
+        var renderTTL = renderTTL(min(minDnsTTL, ceilSeconds(minDampingTTL)));
+        var dependencies = Map.copyOf(context.dependencies());
+        LOGGER.debug("Resolved {} pools with {} lookups and {} SRV targets from glue", pools.size(), context.lookups(), context.glued());
+        if (previous != null && changes.isEmpty()) {
+            LOGGER.debug("No pool changed, reusing previous render with ttl={}s", renderTTL);
+            return previous.unchanged(renderTTL, dependencies, pools);
+        }
 
-        var rendered = objectMapper.writeValueAsString(root);
+        var rendered = template.splice(pools.stream().map(RenderedPool::serialized).toList());
 
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Rendered template with ttl={}s and content '{}'", renderTTL, rendered);
@@ -101,53 +307,89 @@ public class RenderService {
             LOGGER.debug("Rendered template with ttl={}s", renderTTL);
         }
 
-        return new Render(rendered, renderTTL);
+        return new Render(rendered, renderTTL, dependencies, template, pools, changes);
     }
 
-    private List<ResolvedServer> resolve(ServerToken token) {
+    private String serialize(List<String> servers) {
+        try {
+            return objectMapper.writeValueAsString(servers);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize servers " + servers, e);
+        }
+    }
+
+    private static long ceilSeconds(long millis) {
+        return millis == Long.MAX_VALUE ? Long.MAX_VALUE : Math.ceilDiv(millis, 1000L);
+    }
+
+    private long renderTTL(long dnsTTL) {
+        long minTTL = renderProperties.ttl().min();
+        long maxTTL = renderProperties.ttl().max();
+        return max(minTTL, min(dnsTTL, maxTTL));
+    }
+
+    private CompletableFuture<List<ResolvedServer>> resolve(ServerToken token, RenderContext context) {
         LOGGER.trace("Resolving token {}", token);
         return switch (token) {
-            case FixedToken ft -> List.of(new ResolvedServer(ft.value(), ft, Long.MAX_VALUE));
-            case DNSAToken a -> resolveDNSA(a);
-            case DNSSRVToken a -> resolveDNSSRV(a);
+            case FixedToken ft -> CompletableFuture.completedFuture(List.of(new ResolvedServer(ft.value(), ft, Long.MAX_VALUE)));
+            case DNSAToken a -> resolveDNSA(a, context);
+            case DNSSRVToken a -> resolveDNSSRV(a, context);
         };
     }
 
-    private List<ResolvedServer> resolveDNSSRV(DNSSRVToken token) {
-        var srvRecords = dnsquery(RequestType.SRV, token.value())
-            .stream()
-            // do not consume extra answers, such as additional names,
-            // since they are not guaranteed to be exhaustive
-            .filter(r -> r.getType() == Type.SRV)
-            .map(SRVRecord.class::cast)
-            .sorted(SRV_ORDERING)
-            .toList();
+    private CompletableFuture<List<ResolvedServer>> resolveDNSSRV(DNSSRVToken token, RenderContext context) {
+        return dnsquery(RequestType.SRV, token.value(), context).thenCompose(records -> {
+            var srvRecords = records
+                .stream()
+                .filter(r -> r.getType() == Type.SRV)
+                .map(SRVRecord.class::cast)
+                .toList();
 
-        if (srvRecords.isEmpty()) {
-            return Collections.emptyList();
-        }
+            // address records of targets given as glue, which the resolver only keeps if asked to (see DnsProperties#srvGlue)
+            var glue = records
+                .stream()
+                .filter(r -> r.getType() == Type.A)
+                .collect(groupingBy(Record::getName));
 
-        var srvTTL = srvRecords
-            .stream()
-            .mapToLong(SRVRecord::getTTL)
-            .min()
-            .orElseThrow();
+            if (srvRecords.isEmpty()) {
+                return CompletableFuture.completedFuture(Collections.emptyList());
+            }
 
-        return srvRecords
-            .stream()
-            .map(srv -> new DNSAToken(srv.getTarget().toString(true), srv.getPort()))
-            .map(srvA -> resolveAName(srvA.value(), srvA.port(), token, srvTTL))
-            .flatMap(List::stream)
-            .toList();
+            var srvTTL = srvRecords
+                .stream()
+                .mapToLong(SRVRecord::getTTL)
+                .min()
+                .orElseThrow();
+
+            var targets = srvRecords
+                .stream()
+                .map(srv -> {
+                    var targetGlue = glue.get(srv.getTarget());
+                    if (targetGlue != null) {
+                        context.glued().increment();
+                        metrics.nameGlued();
+                        return CompletableFuture.completedFuture(servers(targetGlue, srv.getPort(), token, srvTTL));
+                    }
+                    // targets are fully qualified, and so are never expanded with search domains
+                    return resolveAName(srv.getTarget().toString(), srv.getPort(), token, srvTTL, context);
+                })
+                .toList();
+
+            return CompletableFuture
+                .allOf(targets.toArray(new CompletableFuture<?>[0]))
+                .thenApply(_ -> targets.stream().map(CompletableFuture::join).flatMap(List::stream).toList());
+        });
     }
 
-    private List<ResolvedServer> resolveDNSA(DNSAToken token) {
-        return resolveAName(token.value(), token.port(), token, Long.MAX_VALUE);
+    private CompletableFuture<List<ResolvedServer>> resolveDNSA(DNSAToken token, RenderContext context) {
+        return resolveAName(token.value(), token.port(), token, Long.MAX_VALUE, context);
     }
 
-    private List<ResolvedServer> resolveAName(String qname, int port, ServerToken source, long maxTTL) {
-        var records = dnsquery(RequestType.A, qname);
+    private CompletableFuture<List<ResolvedServer>> resolveAName(String qname, int port, ServerToken source, long maxTTL, RenderContext context) {
+        return dnsquery(RequestType.A, qname, context).thenApply(records -> servers(records, port, source, maxTTL));
+    }
 
+    private static List<ResolvedServer> servers(List<Record> records, int port, ServerToken source, long maxTTL) {
         if (records.isEmpty()) {
             return Collections.emptyList();
         }
@@ -168,12 +410,73 @@ public class RenderService {
             .toList();
     }
 
-    private List<Record> dnsquery(RequestType qtype, String qname) {
-        var resolution = resolver.resolve(new DnsRequest(qtype, qname));
-        return switch (resolution) {
-            case DnsResolutionFailure(Throwable cause) -> throw new RuntimeException("Cannot resolve " + qtype + " " + qname, cause);
-            case DnsResolutionSuccess(var records) -> records;
-        };
+    private CompletableFuture<List<Record>> dnsquery(RequestType qtype, String qname, RenderContext context) {
+        var request = new DnsRequest(qtype, qname);
+        context.lookups().increment();
+        metrics.nameResolved();
+        return context
+            .limiter()
+            .submit(() -> resolver.resolveAsync(request))
+            .thenApply(resolution -> switch (resolution) {
+                case DnsResolutionFailure(Throwable cause) -> throw new RuntimeException("Cannot resolve " + qtype + " " + qname, cause);
+                case DnsResolutionSuccess(var records) -> {
+                    var ordered = ServerOrdering.sort(records, renderProperties.ordering());
+                    context.dependencies().put(request, dependency(ordered));
+                    yield ordered;
+                }
+            });
     }
 
+    private RenderDependency dependency(List<Record> records) {
+        var answer = records.stream().map(Record::rdataToString).toList();
+        // an empty answer has no TTL to go by, so re-check it as late as a render is allowed to live
+        var ttl = records.stream().mapToLong(Record::getTTL).min().orElse(renderProperties.ttl().max());
+        return new RenderDependency(answer, clock.millis() + ttl * 1000L);
+    }
+
+    /**
+     * Waits for all the futures of a pool, and concatenates the results of those which succeeded in the order of the futures themselves
+     * (ie template order), along with the first failure if any did not.
+     */
+    private static PoolResolution awaitPool(List<CompletableFuture<List<ResolvedServer>>> servers) {
+        var resolved = new ArrayList<ResolvedServer>();
+        RuntimeException failure = null;
+        for (var server : servers) {
+            try {
+                resolved.addAll(server.join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException re ? re : e;
+                }
+            }
+        }
+        return new PoolResolution(resolved, failure);
+    }
+
+    /**
+     * State shared by all the lookups of a single render.
+     */
+    private record RenderContext(
+        InFlightLimiter limiter,
+        Map<DnsRequest, RenderDependency> dependencies,
+        LongAdder lookups,
+        LongAdder glued
+    ) {
+
+        RenderContext(InFlightLimiter limiter) {
+            this(limiter, new ConcurrentHashMap<>(), new LongAdder(), new LongAdder());
+        }
+
+    }
+
+    private record PoolResolution(
+        List<ResolvedServer> servers,
+        @Nullable RuntimeException failure
+    ) { }
+
+    private record PendingPool(
+        String name,
+        List<CompletableFuture<List<ResolvedServer>>> servers
+    ) { }
+
 }
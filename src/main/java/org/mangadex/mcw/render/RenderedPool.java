@@ -0,0 +1,23 @@
+package org.mangadex.mcw.render;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * @param name          the name of the pool in the template
+ * @param servers       the resolved servers of the pool, in rendered order
+ * @param serialized    the servers, as serialized in the rendered output
+ * @param damping       the membership changes of the pool held back from this render
+ * @param degradedSince since when resolving the pool fails, or null if it does not
+ * @param held          how the pool is held at its last servers by the shrink guard, or null if it is not
+ */
+public record RenderedPool(
+    String name,
+    List<String> servers,
+    String serialized,
+    PoolDamping damping,
+    @Nullable Instant degradedSince,
+    @Nullable PoolShrinkGuard.HeldPool held
+) { }
@@ -0,0 +1,15 @@
+package org.mangadex.mcw.render;
+
+import org.jetbrains.annotations.Nullable;
+
+@FunctionalInterface
+public interface Renderer {
+
+    /**
+     * @param template the template to render
+     * @param previous the last render written for the same output, whose results may be reused, or null if there is none yet (it may be of
+     *                 another template, if the template changed since)
+     */
+    Render render(String template, @Nullable Render previous) throws Exception;
+
+}
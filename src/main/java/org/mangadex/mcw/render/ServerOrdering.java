@@ -0,0 +1,137 @@
+package org.mangadex.mcw.render;
+
+import static java.util.Comparator.comparing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SRVRecord;
+
+import org.mangadex.mcw.render.RenderProperties.Ordering;
+
+/**
+ * Orders the records of a DNS answer before they are turned into servers.
+ * <p>
+ * SRV records are always ordered by priority then target. In {@link Ordering#CANONICAL} mode, ties are further broken by weight and port,
+ * and address records are ordered by numeric address, so that the same set of records always renders the same way, whatever order the
+ * nameserver returned them in (which round-robin DNS servers rotate on every query). In {@link Ordering#RESOLVED} mode, address records
+ * are kept in the order they were returned.
+ * <p>
+ * In {@link Ordering#SLOT_STABLE} mode, records are ordered canonically, and servers then keep the position they had in their pool on the
+ * previous render as long as they remain in it (see {@link #slotStable(List, List)}).
+ */
+public final class ServerOrdering {
+
+    private static final Comparator<SRVRecord> SRV_RESOLVED = comparing(SRVRecord::getPriority).thenComparing(SRVRecord::getTarget);
+
+    private static final Comparator<SRVRecord> SRV_CANONICAL = comparing(SRVRecord::getPriority)
+        .thenComparing(SRVRecord::getWeight)
+        .thenComparing(SRVRecord::getTarget)
+        .thenComparing(SRVRecord::getPort);
+
+    // the canonical wire form of an address record's data is the address itself, in network order
+    private static final Comparator<Record> ADDRESS_CANONICAL = (a, b) -> Arrays.compareUnsigned(a.rdataToWireCanonical(), b.rdataToWireCanonical());
+
+    private ServerOrdering() {
+    }
+
+    /**
+     * @param records the records of a single answer, either all of the same type or SRV records along with the address records of their
+     *                targets (ie glue), which are then ordered after them
+     */
+    public static List<Record> sort(List<Record> records, Ordering ordering) {
+        if (records.size() < 2) {
+            return records;
+        }
+
+        return records.stream().sorted(comparator(ordering)).toList();
+    }
+
+    private static Comparator<Record> comparator(Ordering ordering) {
+        var srv = switch (ordering) {
+            case RESOLVED -> SRV_RESOLVED;
+            case CANONICAL, SLOT_STABLE -> SRV_CANONICAL;
+        };
+
+        return (a, b) -> {
+            if (a instanceof SRVRecord srvA && b instanceof SRVRecord srvB) {
+                return srv.compare(srvA, srvB);
+            }
+            if (a instanceof SRVRecord != b instanceof SRVRecord) {
+                return a instanceof SRVRecord ? -1 : 1;
+            }
+            return ordering != Ordering.RESOLVED ? ADDRESS_CANONICAL.compare(a, b) : 0; // stable sort, keeps answer order
+        };
+    }
+
+    /**
+     * Assigns servers to the positions of a pool so that as few as possible move, since consistent hashing maps keys by position:
+     * <ul>
+     *     <li>servers still in the pool keep their previous position</li>
+     *     <li>new servers take the positions left by removed ones, in order</li>
+     *     <li>if the pool shrank, the positions left empty are filled with the last servers of the pool, so that only those move</li>
+     *     <li>if the pool grew, the remaining new servers are appended</li>
+     * </ul>
+     *
+     * @param previous the servers of the pool on the previous render, in their assigned positions
+     * @param current  the servers of the pool now, in the order they were resolved in
+     */
+    public static List<String> slotStable(List<String> previous, List<String> current) {
+        if (previous.isEmpty() || previous.equals(current)) {
+            return current;
+        }
+
+        // servers may appear several times in a pool, so keep track of how many times each is yet to be placed
+        var remaining = new HashMap<String, Integer>();
+        current.forEach(server -> remaining.merge(server, 1, Integer::sum));
+
+        var slots = new ArrayList<String>(previous.size());
+        for (var server : previous) {
+            if (remaining.getOrDefault(server, 0) > 0) {
+                remaining.merge(server, -1, Integer::sum);
+                slots.add(server);
+            } else {
+                slots.add(null);
+            }
+        }
+
+        var newcomers = new ArrayDeque<String>();
+        for (var server : current) {
+            if (remaining.getOrDefault(server, 0) > 0) {
+                remaining.merge(server, -1, Integer::sum);
+                newcomers.add(server);
+            }
+        }
+
+        for (int i = 0; i < slots.size() && !newcomers.isEmpty(); i++) {
+            if (slots.get(i) == null) {
+                slots.set(i, newcomers.poll());
+            }
+        }
+
+        int end = slots.size();
+        for (int i = 0; i < end; i++) {
+            if (slots.get(i) != null) {
+                continue;
+            }
+            while (end > i && slots.get(end - 1) == null) {
+                end--;
+            }
+            if (end > i) {
+                slots.set(i, slots.get(end - 1));
+                end--;
+            }
+        }
+
+        var assigned = new ArrayList<String>(end + newcomers.size());
+        assigned.addAll(slots.subList(0, end));
+        assigned.addAll(newcomers);
+        return assigned;
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.mangadex.mcw.render.template;
+
+import java.util.List;
+
+import org.mangadex.mcw.render.template.token.ServerToken;
+
+/**
+ * A template split around its pools' servers arrays, so that rendering it only takes resolving the tokens of each pool and splicing their
+ * serialized results between the static fragments.
+ *
+ * @param source    the template it was compiled from
+ * @param fragments the serialized template, cut where each pool's servers array goes (always one more fragment than there are pools)
+ * @param pools     the pools of the template, in the order their servers arrays appear in the output
+ */
+public record CompiledTemplate(
+    String source,
+    List<String> fragments,
+    List<CompiledPool> pools
+) {
+
+    public CompiledTemplate {
+        if (fragments.size() != pools.size() + 1) {
+            throw new IllegalArgumentException("Expected " + (pools.size() + 1) + " fragments for " + pools.size() + " pools, got " + fragments.size());
+        }
+    }
+
+    /**
+     * @param servers the serialized servers array of each pool, in pool order
+     */
+    public String splice(List<String> servers) {
+        if (servers.size() != pools.size()) {
+            throw new IllegalArgumentException("Expected servers for " + pools.size() + " pools, got " + servers.size());
+        }
+
+        int length = 0;
+        for (var fragment : fragments) {
+            length += fragment.length();
+        }
+        for (var poolServers : servers) {
+            length += poolServers.length();
+        }
+
+        var rendered = new StringBuilder(length);
+        for (int i = 0; i < servers.size(); i++) {
+            rendered.append(fragments.get(i)).append(servers.get(i));
+        }
+        return rendered.append(fragments.getLast()).toString();
+    }
+
+    public record CompiledPool(
+        String name,
+        List<ServerToken> tokens
+    ) { }
+
+}
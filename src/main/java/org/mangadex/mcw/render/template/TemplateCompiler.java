@@ -0,0 +1,198 @@
+package org.mangadex.mcw.render.template;
+
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.mangadex.mcw.render.RenderProperties;
+import org.mangadex.mcw.render.template.CompiledTemplate.CompiledPool;
+import org.mangadex.mcw.render.template.token.PoolTokenizer;
+
+@Component
+public class TemplateCompiler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateCompiler.class);
+
+    private static final String STREAMING_PLACEHOLDER = "mcw-servers";
+
+    private final ObjectMapper objectMapper;
+    // duplicate names are rejected, as the tree path would keep the last value of a name whereas the streaming path would copy them all
+    private final ObjectReader reader;
+    private final PoolTokenizer tokenizer;
+    private final RenderProperties renderProperties;
+
+    public TemplateCompiler(ObjectMapper objectMapper, PoolTokenizer tokenizer, RenderProperties renderProperties) {
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.reader().with(StreamReadFeature.STRICT_DUPLICATE_DETECTION);
+        this.tokenizer = tokenizer;
+        this.renderProperties = renderProperties;
+    }
+
+    public CompiledTemplate compile(String template) throws IOException {
+        LOGGER.trace("Compiling template\n{}", template);
+
+        var compiled = switch (renderProperties.mode()) {
+            case TREE -> compileTree(template);
+            case STREAMING -> compileStreaming(template);
+        };
+
+        LOGGER.debug("Compiled template with {} pools ({} mode)", compiled.pools().size(), renderProperties.mode());
+        return compiled;
+    }
+
+    private CompiledTemplate compileTree(String template) throws IOException {
+        var root = reader.readTree(template);
+
+        var pools = root.get("pools");
+        if (pools == null || !pools.isObject() || pools.isEmpty()) {
+            throw invalidPools();
+        }
+
+        // replace every servers array by a unique placeholder string, serialize the whole template once,
+        // then cut it where the (quoted) placeholders ended up
+        var placeholderPrefix = "mcw-servers-" + UUID.randomUUID() + "-";
+        var compiledPools = new ArrayList<CompiledPool>();
+
+        var poolEntries = pools.fields();
+        while (poolEntries.hasNext()) {
+            var poolEntry = poolEntries.next();
+            var poolName = poolEntry.getKey();
+            var pool = poolEntry.getValue();
+
+            var serverTokens = tokenizer.tokenize(poolName, pool);
+            LOGGER.trace("Tokenized pool[{}]->servers into {}", poolName, serverTokens);
+
+            // tokenization guarantees the pool is an object
+            ((ObjectNode) pool).set("servers", new TextNode(placeholderPrefix + compiledPools.size()));
+            compiledPools.add(new CompiledPool(poolName, serverTokens));
+        }
+
+        var serialized = objectMapper.writeValueAsString(root);
+
+        var fragments = new ArrayList<String>(compiledPools.size() + 1);
+        int from = 0;
+        for (int i = 0; i < compiledPools.size(); i++) {
+            var placeholder = objectMapper.writeValueAsString(placeholderPrefix + i);
+            int at = serialized.indexOf(placeholder, from);
+            if (at < 0) {
+                throw new IllegalStateException("Servers of pool[" + compiledPools.get(i).name() + "] not found in serialized template");
+            }
+            fragments.add(serialized.substring(from, at));
+            from = at + placeholder.length();
+        }
+        fragments.add(serialized.substring(from));
+
+        return new CompiledTemplate(template, fragments, compiledPools);
+    }
+
+    /**
+     * Copies the template token by token from the parser to a generator configured like the tree path's serializer, only materializing
+     * the $.pools.*.servers arrays. Fragments are cut as the output goes, so the template is never held as a tree, nor searched afterward.
+     */
+    private CompiledTemplate compileStreaming(String template) throws IOException {
+        var output = new StringWriter(template.length());
+        var fragments = new ArrayList<String>();
+        var compiledPools = new ArrayList<CompiledPool>();
+
+        try (
+            var parser = reader.createParser(template);
+            var generator = objectMapper.writer().createGenerator(output)
+        ) {
+            if (parser.nextToken() != START_OBJECT) {
+                throw invalidPools();
+            }
+
+            generator.writeStartObject();
+            while (parser.nextToken() == FIELD_NAME) {
+                var field = parser.currentName();
+                generator.writeFieldName(field);
+                parser.nextToken();
+
+                if ("pools".equals(field) && parser.currentToken() == START_OBJECT) {
+                    copyPools(parser, generator, output, fragments, compiledPools);
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            generator.writeEndObject();
+        }
+
+        if (compiledPools.isEmpty()) {
+            throw invalidPools();
+        }
+
+        fragments.add(output.toString());
+        return new CompiledTemplate(template, fragments, compiledPools);
+    }
+
+    private void copyPools(
+        JsonParser parser,
+        JsonGenerator generator,
+        StringWriter output,
+        List<String> fragments,
+        List<CompiledPool> compiledPools
+    ) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == FIELD_NAME) {
+            var poolName = parser.currentName();
+            generator.writeFieldName(poolName);
+            parser.nextToken();
+
+            if (parser.currentToken() != START_OBJECT) {
+                // let the tokenizer report the pool's type, the same way the tree path does
+                tokenizer.tokenize(poolName, parser.readValueAsTree());
+                throw new IllegalStateException("Pool[" + poolName + "] is not a json object");
+            }
+
+            var pool = objectMapper.createObjectNode();
+            generator.writeStartObject();
+            while (parser.nextToken() == FIELD_NAME) {
+                var field = parser.currentName();
+                generator.writeFieldName(field);
+                parser.nextToken();
+
+                if (!"servers".equals(field)) {
+                    generator.copyCurrentStructure(parser);
+                    continue;
+                }
+
+                pool.set("servers", parser.<JsonNode>readValueAsTree());
+
+                // the placeholder is the last thing written, so whatever precedes it is the static fragment before this pool's servers
+                generator.writeString(STREAMING_PLACEHOLDER);
+                generator.flush();
+                var buffer = output.getBuffer();
+                fragments.add(buffer.substring(0, buffer.length() - STREAMING_PLACEHOLDER.length() - 2));
+                buffer.setLength(0);
+            }
+            generator.writeEndObject();
+
+            var serverTokens = tokenizer.tokenize(poolName, pool);
+            LOGGER.trace("Tokenized pool[{}]->servers into {}", poolName, serverTokens);
+            compiledPools.add(new CompiledPool(poolName, serverTokens));
+        }
+        generator.writeEndObject();
+    }
+
+    private static InvalidTemplateException invalidPools() {
+        return new InvalidTemplateException("Cannot parse configuration template, $.pools must be non-empty object");
+    }
+
+}
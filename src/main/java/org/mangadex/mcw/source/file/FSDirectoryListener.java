@@ -0,0 +1,14 @@
+package org.mangadex.mcw.source.file;
+
+import java.nio.file.Path;
+
+public interface FSDirectoryListener {
+
+    /**
+     * Called when a template is found in the directory for the first time, and whenever it changes afterwards
+     */
+    void templateChanged(Path template, String content);
+
+    void templateRemoved(Path template);
+
+}
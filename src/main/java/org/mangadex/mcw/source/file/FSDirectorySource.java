@@ -0,0 +1,52 @@
+package org.mangadex.mcw.source.file;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.mangadex.mcw.lifecycle.dsn.Dsn;
+import org.mangadex.mcw.source.Source;
+
+/**
+ * A directory of templates, each rendered on its own, as in {@code file:///etc/mcrouter/templates/?glob=*.json}
+ *
+ * @param directory absolute path of the directory
+ * @param glob      glob the names of templates in the directory must match
+ * @param period    period between two checks of the directory
+ * @param mode      how changes of the directory are noticed
+ * @param maxPeriod period the checks back off to while the directory stays unchanged
+ */
+public record FSDirectorySource(Path directory, String glob, Duration period, FSWatchMode mode, Duration maxPeriod) implements Source {
+
+    public static final String FS_SOURCE_OPTION_GLOB = "glob";
+    public static final String DEFAULT_GLOB = "*";
+
+    public FSDirectorySource {
+        if (!directory.isAbsolute()) {
+            throw new IllegalArgumentException("Path must be absolute: " + directory);
+        }
+        if (maxPeriod.compareTo(period) < 0) {
+            maxPeriod = period;
+        }
+    }
+
+    /**
+     * @return whether the DSN is of a directory, ie ends with a slash or has a glob
+     */
+    public static boolean isDirectory(Dsn dsn) {
+        return dsn.value().endsWith("/") || dsn.parameters().containsKey(FS_SOURCE_OPTION_GLOB);
+    }
+
+    public static FSDirectorySource parse(Dsn dsn, Duration defaultPeriod, FSWatchMode defaultMode, Duration defaultMaxPeriod) {
+        var source = FSSource.parse(dsn, defaultPeriod, defaultMode, defaultMaxPeriod);
+        var glob = dsn.parameters().containsKey(FS_SOURCE_OPTION_GLOB)
+            ? dsn.parameters().get(FS_SOURCE_OPTION_GLOB).getFirst()
+            : DEFAULT_GLOB;
+        return new FSDirectorySource(source.path(), glob, source.period(), source.mode(), source.maxPeriod());
+    }
+
+    @Override
+    public String toString() {
+        return "file://" + directory.toAbsolutePath() + "/?glob=" + glob;
+    }
+
+}
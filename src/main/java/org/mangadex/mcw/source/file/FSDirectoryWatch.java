@@ -0,0 +1,148 @@
+package org.mangadex.mcw.source.file;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mangadex.mcw.lifecycle.scheduling.SerialLane;
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+
+/**
+ * Watches all the templates of a directory at once, as {@link FSWatch} does for a single one, and reports templates which appear, change
+ * or disappear.
+ */
+class FSDirectoryWatch implements FSEvents.Listener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FSDirectoryWatch.class);
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final FSDirectorySource source;
+    private final FSDirectoryListener listener;
+    private final FSEvents events;
+    private final SerialLane lane;
+    private final PathMatcher matcher;
+
+    private final AtomicBoolean changeQueued = new AtomicBoolean(false);
+    private final Map<Path, FSFileState> templates = new HashMap<>();
+
+    private Duration delay;
+
+    FSDirectoryWatch(WatchScheduler scheduler, FSEvents events, FSDirectorySource source, FSDirectoryListener listener) {
+        this.source = source;
+        this.listener = listener;
+        this.events = events;
+        this.lane = scheduler.newLane("watchdir-" + COUNTER.getAndIncrement());
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + source.glob());
+        this.delay = source.period();
+    }
+
+    public void start() {
+        LOGGER.debug("Started FSDirectoryWatch for {}", source);
+        if (source.mode() == FSWatchMode.EVENTS) {
+            events.register(this);
+        }
+        lane.submit(() -> poll(true));
+    }
+
+    @Override
+    public Path directory() {
+        return source.directory();
+    }
+
+    @Override
+    public boolean concerns(Path entry) {
+        return FSEvents.isAtomicWriterEntry(entry.getFileName().toString()) || matcher.matches(entry.getFileName());
+    }
+
+    /**
+     * Unlike single files, templates are only read on events if their metadata changed, as there may be many of them
+     */
+    @Override
+    public void changed() {
+        if (changeQueued.compareAndSet(false, true)) {
+            lane.submit(() -> {
+                changeQueued.set(false);
+                if (scan(false)) {
+                    delay = source.period();
+                }
+            });
+        }
+    }
+
+    private void poll(boolean read) {
+        delay = scan(read) ? source.period() : FSFileState.backOff(delay, source.maxPeriod());
+        lane.schedule(() -> poll(false), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param read whether to read templates regardless of their metadata
+     * @return whether any template appeared, changed, disappeared or could not be checked, rather than all stayed unchanged
+     */
+    private boolean scan(boolean read) {
+        Set<Path> found;
+        try (var entries = Files.list(source.directory())) {
+            found = entries
+                .filter(path -> !FSEvents.isAtomicWriterEntry(path.getFileName().toString()))
+                .filter(path -> matcher.matches(path.getFileName()))
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toSet());
+        } catch (IOException | RuntimeException e) {
+            // templates are kept as they are rather than considered removed, as this is more likely to be transient
+            LOGGER.error("Unable to list template directory: {} {}", e.getClass().getSimpleName(), e.getMessage());
+            return true;
+        }
+
+        boolean changed = false;
+        var removed = templates.keySet().stream().filter(template -> !found.contains(template)).toList();
+        for (var template : removed) {
+            templates.remove(template);
+            LOGGER.info("Template file {} was removed", template);
+            try {
+                listener.templateRemoved(template);
+            } catch (Throwable e) {
+                LOGGER.error("Failed handling removal of template file {}", template, e);
+            }
+            changed = true;
+        }
+
+        for (var template : found) {
+            try {
+                var content = templates.computeIfAbsent(template, _ -> new FSFileState()).check(template, read);
+                if (content != null) {
+                    listener.templateChanged(template, content);
+                    changed = true;
+                }
+            } catch (Throwable e) {
+                LOGGER.error("Unable to read template file {}: {} {}", template, e.getClass().getSimpleName(), e.getMessage());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public void shutdown() {
+        if (source.mode() == FSWatchMode.EVENTS) {
+            events.unregister(this);
+        }
+        lane.shutdownNow();
+        LOGGER.debug("Stopped FSDirectoryWatch for {}", source);
+    }
+
+    public boolean isShuttingDown() {
+        return lane.isShutdown();
+    }
+
+}
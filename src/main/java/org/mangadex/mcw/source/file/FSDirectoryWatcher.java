@@ -0,0 +1,82 @@
+package org.mangadex.mcw.source.file;
+
+import static java.nio.file.Files.isDirectory;
+import static java.nio.file.Files.isReadable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+
+@Component
+public class FSDirectoryWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FSDirectoryWatcher.class);
+
+    private final Map<FSDirectorySource, FSDirectoryWatch> watches = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final WatchScheduler scheduler;
+    private final FSEvents events;
+
+    public FSDirectoryWatcher(WatchScheduler scheduler, FSEvents events) {
+        this.scheduler = scheduler;
+        this.events = events;
+    }
+
+    public void addWatch(FSDirectorySource source, FSDirectoryListener listener) {
+        try {
+            lock.lock();
+
+            if (!isDirectory(source.directory())) {
+                LOGGER.warn("Source path not found or is not a directory: {}", source.directory());
+            } else if (!isReadable(source.directory())) {
+                LOGGER.warn("Source path is not readable: {}", source.directory());
+            }
+
+            if (watches.containsKey(source)) {
+                LOGGER.warn("Directory watch already exists on {}", source);
+            } else {
+                LOGGER.debug("Registered FSDirectoryWatch on {}", source);
+                var watch = new FSDirectoryWatch(scheduler, events, source, listener);
+                watches.put(source, watch);
+                watch.start();
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Failed to register directory watch on {}", source, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeWatch(FSDirectorySource source) {
+        try {
+            lock.lock();
+
+            var watch = watches.remove(source);
+            if (watch == null) {
+                LOGGER.debug("No existing directory watch on {}", source);
+            } else if (watch.isShuttingDown()) {
+                LOGGER.warn("Watch on {} is already shutting down", source);
+            } else {
+                watch.shutdown();
+                LOGGER.debug("Shutting down directory watch on {}", source);
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Failed to unregister directory watch on {}", source, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Set<FSDirectorySource> getSources() {
+        return watches.keySet();
+    }
+
+}
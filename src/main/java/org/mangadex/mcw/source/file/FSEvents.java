@@ -0,0 +1,161 @@
+package org.mangadex.mcw.source.file;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Filesystem events of the directories of watched files, shared by all event driven {@link FSWatch}es and {@link FSDirectoryWatch}es.
+ * <p>
+ * Directories are watched rather than files, since files are usually replaced rather than written to. Notably, Kubernetes mounts ConfigMap
+ * keys as symlinks to {@code ..data/<key>}, and updates them by atomically swapping the {@code ..data} symlink to a new directory, which
+ * only shows up as events on the {@code ..}-prefixed entries next to the watched file.
+ */
+@Component
+public class FSEvents implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FSEvents.class);
+
+    private static final String ATOMIC_WRITER_PREFIX = "..";
+
+    private final Map<Path, WatchedDirectory> directories = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private WatchService watchService;
+
+    /**
+     * @return whether the name is one of the entries Kubernetes swaps when updating a ConfigMap volume (ie {@code ..data})
+     */
+    static boolean isAtomicWriterEntry(String name) {
+        return name.startsWith(ATOMIC_WRITER_PREFIX);
+    }
+
+    /**
+     * @return whether events will be delivered to the listener, otherwise it must rely on checking its files periodically
+     */
+    boolean register(Listener listener) {
+        var directory = listener.directory();
+        try {
+            lock.lock();
+            var watched = directories.get(directory);
+            if (watched == null) {
+                var key = directory.register(watchService(), ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watched = new WatchedDirectory(key, ConcurrentHashMap.newKeySet());
+                directories.put(directory, watched);
+                LOGGER.debug("Watching events of directory {}", directory);
+            }
+            watched.listeners().add(listener);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to watch events of directory {}, falling back to periodic checks: {}", directory, e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void unregister(Listener listener) {
+        var directory = listener.directory();
+        try {
+            lock.lock();
+            var watched = directories.get(directory);
+            if (watched != null && watched.listeners().remove(listener) && watched.listeners().isEmpty()) {
+                watched.key().cancel();
+                directories.remove(directory);
+                LOGGER.debug("Stopped watching events of directory {}", directory);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.lock();
+            directories.clear();
+            if (watchService != null) {
+                watchService.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            var service = watchService;
+            Thread.ofVirtual().name("fsevents").start(() -> dispatch(service));
+        }
+        return watchService;
+    }
+
+    private void dispatch(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                LOGGER.debug("Stopped dispatching filesystem events");
+                return;
+            }
+
+            var directory = (Path) key.watchable();
+            var watched = directories.get(directory);
+            for (var event : key.pollEvents()) {
+                if (watched == null) {
+                    continue;
+                }
+                for (var listener : watched.listeners()) {
+                    if (event.kind() == OVERFLOW || listener.concerns((Path) event.context())) {
+                        listener.changed();
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                LOGGER.warn("Directory {} is no longer watchable, falling back to periodic checks of its files", directory);
+                directories.remove(directory, watched);
+            }
+        }
+    }
+
+    /**
+     * Receives the events of a single directory
+     */
+    interface Listener {
+
+        Path directory();
+
+        /**
+         * @param entry name of the directory entry an event is about
+         */
+        boolean concerns(Path entry);
+
+        void changed();
+
+    }
+
+    private record WatchedDirectory(
+        WatchKey key,
+        Set<Listener> listeners
+    ) { }
+
+}
@@ -0,0 +1,104 @@
+package org.mangadex.mcw.source.file;
+
+import static java.nio.file.Files.newInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+import jakarta.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last known state of a template file, to tell whether it changed without reading it whenever its metadata allows.
+ * <p>
+ * Contents are compared by CRC32C, which is hardware accelerated, as this only needs to tell changes apart rather than resist forgery.
+ */
+final class FSFileState {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FSFileState.class);
+    private static final long RACY_WINDOW_MILLIS = 2000L;
+
+    private String lastChecksum = null;
+    private FileStamp lastStamp = null;
+
+    /**
+     * @param read whether to read the file regardless of its metadata
+     * @return the contents of the file if they changed since the last check, otherwise null (including while the file is empty)
+     * @throws IOException if the file could not be checked, in which case it is read on the next check regardless of its metadata
+     */
+    @Nullable
+    String check(Path path, boolean read) throws IOException {
+        try {
+            var stamp = FileStamp.of(Files.readAttributes(path, BasicFileAttributes.class));
+            if (!read && stamp.equals(lastStamp) && !stamp.racy()) {
+                LOGGER.debug("Template file {} unchanged ({})", path, stamp);
+                return null;
+            }
+            lastStamp = stamp;
+
+            try (var is = new BufferedInputStream(newInputStream(path))) {
+                var bytes = is.readAllBytes();
+                if (bytes.length == 0) {
+                    return null;
+                }
+
+                var checksum = checksum(bytes);
+                if (Objects.equals(lastChecksum, checksum)) {
+                    LOGGER.debug("Template file {} unchanged (crc32c: {})", path, checksum);
+                    return null;
+                }
+                LOGGER.info("Template file {} changed (crc32c: {} -> {})", path, lastChecksum, checksum);
+                lastChecksum = checksum;
+                return new String(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            // read again once it is back, even if it comes back with the same metadata
+            lastStamp = null;
+            throw e;
+        }
+    }
+
+    /**
+     * @return the period until the next check of files which stayed unchanged, doubling up to the maximum period
+     */
+    static Duration backOff(Duration period, Duration maxPeriod) {
+        var doubled = period.multipliedBy(2L);
+        return doubled.compareTo(maxPeriod) <= 0 ? doubled : maxPeriod;
+    }
+
+    private static String checksum(byte[] bytes) {
+        var crc = new CRC32C();
+        crc.update(bytes);
+        return "%08x".formatted(crc.getValue());
+    }
+
+    /**
+     * Metadata of the file a path resolves to, following symlinks, so that swapping a symlink to another file shows up as a change
+     *
+     * @param racy whether the file was modified too recently for its modification time to tell later writes apart, given the coarse
+     *             timestamps of some filesystems (ie NFS), in which case its metadata cannot be trusted and it must be read again
+     */
+    private record FileStamp(
+        FileTime lastModified,
+        long size,
+        @Nullable Object fileKey,
+        boolean racy
+    ) {
+
+        private static FileStamp of(BasicFileAttributes attributes) {
+            var lastModified = attributes.lastModifiedTime();
+            var racy = lastModified.toMillis() > System.currentTimeMillis() - RACY_WINDOW_MILLIS;
+            return new FileStamp(lastModified, attributes.size(), attributes.fileKey(), racy);
+        }
+
+    }
+
+}
@@ -3,20 +3,36 @@ package org.mangadex.mcw.source.file;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Locale;
 
 import org.springframework.boot.convert.DurationStyle;
 
 import org.mangadex.mcw.lifecycle.dsn.Dsn;
 import org.mangadex.mcw.source.Source;
 
-public record FSSource(Path path, Duration period) implements Source {
+/**
+ * @param path      absolute path of the template file
+ * @param period    period between two checks of the file
+ * @param mode      how changes of the file are noticed
+ * @param maxPeriod period the checks back off to while the file stays unchanged (never less than the period, which disables backing off)
+ */
+public record FSSource(Path path, Duration period, FSWatchMode mode, Duration maxPeriod) implements Source {
 
     public static final String FS_SOURCE_OPTION_PERIOD = "period";
+    public static final String FS_SOURCE_OPTION_MODE = "mode";
+    public static final String FS_SOURCE_OPTION_MAX_PERIOD = "max-period";
 
     public FSSource {
         if (!path.isAbsolute()) {
             throw new IllegalArgumentException("Path must be absolute: " + path);
         }
+        if (maxPeriod.compareTo(period) < 0) {
+            maxPeriod = period;
+        }
+    }
+
+    public FSSource(Path path, Duration period) {
+        this(path, period, FSWatchMode.POLL, period);
     }
 
     public static FSSource parse(String input, Duration defaultPeriod) {
@@ -25,6 +41,10 @@ public record FSSource(Path path, Duration period) implements Source {
     }
 
     public static FSSource parse(Dsn dsn, Duration defaultPeriod) {
+        return parse(dsn, defaultPeriod, FSWatchMode.POLL, defaultPeriod);
+    }
+
+    public static FSSource parse(Dsn dsn, Duration defaultPeriod, FSWatchMode defaultMode, Duration defaultMaxPeriod) {
         if (!"file".equals(dsn.protocol())) {
             throw new IllegalArgumentException("Cannot parse input with protocol '" + dsn.protocol() + "' as file source");
         }
@@ -33,7 +53,13 @@ public record FSSource(Path path, Duration period) implements Source {
         var period = dsn.parameters().containsKey(FS_SOURCE_OPTION_PERIOD)
             ? DurationStyle.detectAndParse(dsn.parameters().get(FS_SOURCE_OPTION_PERIOD).getFirst())
             : defaultPeriod;
-        return new FSSource(path, period);
+        var mode = dsn.parameters().containsKey(FS_SOURCE_OPTION_MODE)
+            ? FSWatchMode.valueOf(dsn.parameters().get(FS_SOURCE_OPTION_MODE).getFirst().toUpperCase(Locale.ROOT))
+            : defaultMode;
+        var maxPeriod = dsn.parameters().containsKey(FS_SOURCE_OPTION_MAX_PERIOD)
+            ? DurationStyle.detectAndParse(dsn.parameters().get(FS_SOURCE_OPTION_MAX_PERIOD).getFirst())
+            : defaultMaxPeriod;
+        return new FSSource(path, period, mode, maxPeriod);
     }
 
     @Override
@@ -1,12 +1,22 @@
 package org.mangadex.mcw.source.file;
 
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 
+import org.jetbrains.annotations.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+/**
+ * @param checkPeriodSeconds    default period between two checks of a file source
+ * @param maxCheckPeriodSeconds default period checks of a file source back off to while it stays unchanged, if any, as they do not back off
+ *                              unless configured to
+ * @param mode                  default way of noticing changes of a file source, either by reading it every period or on filesystem events
+ */
 @Validated
 @ConfigurationProperties(prefix = "org.mangadex.mcw.source.file")
 public record FSSourceSettings(
-    @Positive int checkPeriodSeconds
+    @Positive int checkPeriodSeconds,
+    @Nullable @Positive Integer maxCheckPeriodSeconds,
+    @NotNull FSWatchMode mode
 ) { }
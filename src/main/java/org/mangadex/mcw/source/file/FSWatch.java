@@ -1,77 +1,116 @@
 package org.mangadex.mcw.source.file;
 
-import static java.nio.file.Files.newInputStream;
-
-import java.io.BufferedInputStream;
-import java.util.Objects;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.DigestUtils;
 
-class FSWatch extends Thread {
+import org.mangadex.mcw.lifecycle.scheduling.SerialLane;
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+
+/**
+ * Watches a template file on the shared {@link WatchScheduler}, rather than holding a thread of its own while it waits for changes.
+ * <p>
+ * Every period, only the metadata of the file is checked, and it is read only when that changed. In {@link FSWatchMode#EVENTS} mode, it is
+ * also read when {@link FSEvents} reports a change next to it, and the periodic checks only cover events which were missed or could not be
+ * watched for. While the file stays unchanged, the period doubles up to the source's maximum period, unless its directory could not be
+ * watched for events in that mode, in which case periodic checks are all there is and keep to the period.
+ */
+class FSWatch implements FSEvents.Listener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FSWatch.class);
     private static final AtomicInteger COUNTER = new AtomicInteger();
 
     private final FSSource source;
     private final Consumer<String> callback;
+    private final FSEvents events;
+    private final SerialLane lane;
+
+    private final AtomicBoolean changeQueued = new AtomicBoolean(false);
+    private final FSFileState state = new FSFileState();
 
-    private boolean running = false;
+    private Duration delay;
+    private volatile boolean backOff;
 
-    FSWatch(FSSource source, Consumer<String> callback) {
+    FSWatch(WatchScheduler scheduler, FSEvents events, FSSource source, Consumer<String> callback) {
         this.source = source;
         this.callback = callback;
-        setName("watch-" + COUNTER.getAndIncrement());
-        setUncaughtExceptionHandler((_, e) -> LOGGER.error("Uncaught exception", e));
+        this.events = events;
+        this.lane = scheduler.newLane("watch-" + COUNTER.getAndIncrement());
+        this.delay = source.period();
     }
 
-    @Override
     public void start() {
-        running = true;
-        super.start();
+        LOGGER.debug("Started FSWatch for {}", source);
+        // polling backs off by design, whereas events only do when they are actually delivered
+        backOff = source.mode() != FSWatchMode.EVENTS || events.register(this);
+        lane.submit(() -> poll(true));
     }
 
     @Override
-    public void run() {
-        LOGGER.debug("Started FSWatch for {}", source);
-        String lastChecksum = null;
-        while (running) {
-            try (var is = new BufferedInputStream(newInputStream(source.path()))) {
-                var bytes = is.readAllBytes();
-                if (bytes.length == 0) {
-                    continue;
-                }
+    public Path directory() {
+        return source.path().getParent();
+    }
+
+    @Override
+    public boolean concerns(Path entry) {
+        var name = entry.getFileName().toString();
+        return name.equals(source.path().getFileName().toString()) || FSEvents.isAtomicWriterEntry(name);
+    }
 
-                var checksum = DigestUtils.md5DigestAsHex(bytes);
-                if (!Objects.equals(lastChecksum, checksum)) {
-                    LOGGER.info("Template file changed (md5: {} -> {})", lastChecksum, checksum);
-                    lastChecksum = checksum;
-                    callback.accept(new String(bytes));
-                } else {
-                    LOGGER.debug("Template file unchanged (md5: {})", checksum);
+    /**
+     * Events of a single update usually come in bursts, which are coalesced into a single read as long as it did not start yet.
+     */
+    @Override
+    public void changed() {
+        if (changeQueued.compareAndSet(false, true)) {
+            lane.submit(() -> {
+                changeQueued.set(false);
+                if (check(true)) {
+                    delay = source.period();
                 }
-            } catch (Throwable e) {
-                LOGGER.error("Unable to read template file: {} {}", e.getClass().getSimpleName(), e.getMessage());
-            }
+            });
+        }
+    }
 
-            try {
-                Thread.sleep(source.period());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    private void poll(boolean read) {
+        delay = check(read) || !backOff ? source.period() : FSFileState.backOff(delay, source.maxPeriod());
+        lane.schedule(() -> poll(false), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param read whether to read the file regardless of its metadata
+     * @return whether the file changed or could not be checked, rather than stayed unchanged
+     */
+    private boolean check(boolean read) {
+        try {
+            var template = state.check(source.path(), read);
+            if (template == null) {
+                return false;
             }
+            callback.accept(template);
+            return true;
+        } catch (Throwable e) {
+            LOGGER.error("Unable to read template file: {} {}", e.getClass().getSimpleName(), e.getMessage());
+            return true;
         }
-        LOGGER.debug("Stopped FSWatch for {}", source);
     }
 
     public void shutdown() {
-        running = false;
+        if (source.mode() == FSWatchMode.EVENTS) {
+            events.unregister(this);
+        }
+        lane.shutdownNow();
+        LOGGER.debug("Stopped FSWatch for {}", source);
     }
 
     public boolean isShuttingDown() {
-        return !running;
+        return lane.isShutdown();
     }
 
 }
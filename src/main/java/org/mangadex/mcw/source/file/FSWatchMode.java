@@ -0,0 +1,12 @@
+package org.mangadex.mcw.source.file;
+
+public enum FSWatchMode {
+    /**
+     * Checks the metadata of the file every period, and reads it when it changed
+     */
+    POLL,
+    /**
+     * Reads the file when its directory reports a change, and only checks its metadata every period in case an event was missed
+     */
+    EVENTS,
+}
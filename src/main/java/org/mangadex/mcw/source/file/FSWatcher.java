@@ -13,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
 import org.mangadex.mcw.source.Watcher;
 
 @Component
@@ -23,6 +24,14 @@ public class FSWatcher implements Watcher<FSSource> {
     private static final Map<FSSource, FSWatch> WATCHES = new ConcurrentHashMap<>();
     private static final ReentrantLock LOCK = new ReentrantLock();
 
+    private final WatchScheduler scheduler;
+    private final FSEvents events;
+
+    public FSWatcher(WatchScheduler scheduler, FSEvents events) {
+        this.scheduler = scheduler;
+        this.events = events;
+    }
+
     @Override
     public void addWatch(FSSource source, Consumer<String> onChanged) {
         try {
@@ -38,7 +47,7 @@ public class FSWatcher implements Watcher<FSSource> {
                 LOGGER.warn("File watch already exists on {}", source);
             } else {
                 LOGGER.debug("Registered FSWatch on {}", source);
-                FSWatch watch = new FSWatch(source, onChanged);
+                FSWatch watch = new FSWatch(scheduler, events, source, onChanged);
                 WATCHES.put(source, watch);
                 watch.start();
             }
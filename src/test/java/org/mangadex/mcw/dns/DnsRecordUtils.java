@@ -27,4 +27,12 @@ public final class DnsRecordUtils {
         }
     }
 
+    public static org.xbill.DNS.CNAMERecord CNAMERecord(String name, int ttl, String target) {
+        try {
+            return new org.xbill.DNS.CNAMERecord(Name.fromString(name, Name.root), DClass.IN, ttl, Name.fromString(target, Name.root));
+        } catch (TextParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
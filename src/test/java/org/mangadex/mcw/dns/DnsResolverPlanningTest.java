@@ -0,0 +1,127 @@
+package org.mangadex.mcw.dns;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.DnsProperties.DnsDiscovery;
+import org.mangadex.mcw.dns.DnsProperties.HedgingSettings;
+import org.mangadex.mcw.dns.DnsProperties.SearchSettings;
+import org.mangadex.mcw.dns.DnsProperties.ServeStaleSettings;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.cache.DnsCache;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+class DnsResolverPlanningTest {
+
+    private static final String EXISTING = "memcache.mcw.svc.cluster.local.";
+
+    private final Resolver upstream = mock(Resolver.class);
+    private final List<String> queried = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // only the second expansion exists, and its SRV targets are given as glue
+        Answer<?> answer = invocation -> {
+            Message query = invocation.getArgument(0);
+            var qname = query.getQuestion().getName().toString();
+            queried.add(qname);
+
+            var response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            if (!qname.equals(EXISTING)) {
+                response.getHeader().setRcode(Rcode.NXDOMAIN);
+            } else if (query.getQuestion().getType() == Type.SRV) {
+                response.addRecord(SRVRecord(qname, 60, 10, 10, 11211, "memcache-1.mcw.mangadex"), Section.ANSWER);
+                response.addRecord(ARecord("memcache-1.mcw.mangadex", 60, "10.0.0.1"), Section.ADDITIONAL);
+            } else {
+                response.addRecord(ARecord(qname, 60, "10.0.0.1"), Section.ANSWER);
+            }
+            return CompletableFuture.completedFuture(response);
+        };
+        doAnswer(answer).when(upstream).sendAsync(any(Message.class));
+        doAnswer(answer).when(upstream).sendAsync(any(Message.class), any(Executor.class));
+    }
+
+    @Test
+    void looksPlannedNamesUpFromTheAnswerToTheirProbe() {
+        var resolver = resolver(false);
+        var request = new DnsRequest(RequestType.A, "memcache.mcw");
+
+        assertThat(resolver.resolve(request)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).extracting(Record::rdataToString).containsExactly("10.0.0.1")
+        );
+        // one query per expansion probed, and none more to look the one which exists up
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.", EXISTING);
+
+        queried.clear();
+        assertThat(resolver.resolve(request)).isInstanceOf(DnsResolutionSuccess.class);
+        assertThat(queried).isEmpty();
+    }
+
+    @Test
+    void keepsGlueOfProbedSRVNames() {
+        var resolver = resolver(true);
+
+        assertThat(resolver.resolve(new DnsRequest(RequestType.SRV, "memcache.mcw"))).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).extracting(Record::rdataToString).containsExactly(
+                "10 10 11211 memcache-1.mcw.mangadex.",
+                "10.0.0.1"
+            )
+        );
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.", EXISTING);
+    }
+
+    private DnsResolver resolver(boolean srvGlue) {
+        var cache = new DnsCacheSettings(
+            true,
+            new ServeStaleSettings(false, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(1), Duration.ofSeconds(60)),
+            SnapshotSettings.DISABLED
+        );
+        var search = new SearchSettings(true, List.of("mcw.svc.cluster.local", "svc.cluster.local"), 5, Duration.ofMinutes(5));
+        var properties = new DnsProperties(
+            DnsDiscovery.STATIC,
+            List.of(),
+            List.of(),
+            8,
+            Duration.ofSeconds(1),
+            cache,
+            search,
+            srvGlue,
+            Duration.ofSeconds(30),
+            new HedgingSettings(false, 0.95, Duration.ofMillis(50), 3, Duration.ofSeconds(30))
+        );
+        return new DnsResolver(
+            upstream,
+            properties,
+            new DnsCache(Clock.systemUTC(), cache),
+            new QueryPlanner(Clock.systemUTC(), search, List.of(), 1)
+        );
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.mangadex.mcw.dns;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.CNAMERecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.DnsProperties.DnsDiscovery;
+import org.mangadex.mcw.dns.DnsProperties.HedgingSettings;
+import org.mangadex.mcw.dns.DnsProperties.SearchSettings;
+import org.mangadex.mcw.dns.DnsProperties.ServeStaleSettings;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.cache.DnsCache;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolutionFailure;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+class DnsResolverSRVGlueTest {
+
+    private static final DnsRequest SRV = new DnsRequest(RequestType.SRV, "_memcache._tcp.memcache.mcw.mangadex");
+
+    private final Resolver upstream = mock(Resolver.class);
+    private final DnsResolver resolver = resolver();
+
+    @Test
+    void keepsGlueOfSRVTargetsOnly() {
+        respond(Rcode.NOERROR, List.of(
+            SRVRecord(SRV.name(), 30, 10, 10, 11211, "memcache-1.mcw.mangadex"),
+            SRVRecord(SRV.name(), 30, 10, 10, 11211, "memcache-2.mcw.mangadex")
+        ), List.of(
+            ARecord("memcache-1.mcw.mangadex", 30, "10.0.0.1"),
+            ARecord("unrelated.mcw.mangadex", 30, "10.0.0.9")
+        ));
+
+        assertThat(resolver.resolve(SRV)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).extracting(Record::rdataToString).containsExactly(
+                "10 10 11211 memcache-1.mcw.mangadex.",
+                "10 10 11211 memcache-2.mcw.mangadex.",
+                "10.0.0.1"
+            )
+        );
+    }
+
+    @Test
+    void followsCNAMEChainToSRVRecords() {
+        var alias = new DnsRequest(RequestType.SRV, "mc-srv-to-query.mcw.mangadex");
+        respond(Rcode.NOERROR, List.of(
+            CNAMERecord(alias.name(), 30, "mc-srv-intermediate.mcw.mangadex"),
+            CNAMERecord("mc-srv-intermediate.mcw.mangadex", 30, SRV.name()),
+            SRVRecord(SRV.name(), 30, 10, 10, 11211, "memcache-1.mcw.mangadex"),
+            SRVRecord(SRV.name(), 30, 20, 10, 11211, "memcache-2.mcw.mangadex")
+        ), List.of(
+            ARecord("memcache-1.mcw.mangadex", 30, "10.0.0.1")
+        ));
+
+        assertThat(resolver.resolve(alias)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).extracting(Record::rdataToString).containsExactly(
+                "10 10 11211 memcache-1.mcw.mangadex.",
+                "20 10 11211 memcache-2.mcw.mangadex.",
+                "10.0.0.1"
+            )
+        );
+    }
+
+    @Test
+    void looksUpWithoutGlueWhenCNAMEChainIsIncomplete() {
+        var alias = new DnsRequest(RequestType.SRV, "mc-srv-to-query.mcw.mangadex");
+        // the lookup session sends its queries with an executor, unlike plain queries
+        Answer<?> answer = invocation -> {
+            Message query = invocation.getArgument(0);
+            var response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            if (query.getQuestion().getName().equals(alias.qname())) {
+                // the chain stops at its first hop, as some recursive resolvers leave following it to the client
+                response.addRecord(CNAMERecord(alias.name(), 30, SRV.name()), Section.ANSWER);
+            } else {
+                response.addRecord(SRVRecord(SRV.name(), 30, 10, 10, 11211, "memcache-1.mcw.mangadex"), Section.ANSWER);
+            }
+            return CompletableFuture.completedFuture(response);
+        };
+        doAnswer(answer).when(upstream).sendAsync(any(Message.class));
+        doAnswer(answer).when(upstream).sendAsync(any(Message.class), any(Executor.class));
+
+        assertThat(resolver.resolve(alias)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).extracting(Record::rdataToString).containsExactly("10 10 11211 memcache-1.mcw.mangadex.")
+        );
+    }
+
+    @Test
+    void reportsNonExistentNames() {
+        respond(Rcode.NXDOMAIN, List.of(), List.of());
+
+        assertThat(resolver.resolve(SRV)).isInstanceOfSatisfying(
+            DnsResolutionFailure.class,
+            failure -> assertThat(failure.cause()).isInstanceOf(NoSuchDomainException.class)
+        );
+    }
+
+    private void respond(int rcode, List<Record> answers, List<Record> additionals) {
+        when(upstream.sendAsync(any(Message.class))).thenAnswer(invocation -> {
+            Message query = invocation.getArgument(0);
+            var response = new Message(query.getHeader().getID());
+            response.getHeader().setRcode(rcode);
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            answers.forEach(r -> response.addRecord(r, Section.ANSWER));
+            additionals.forEach(r -> response.addRecord(r, Section.ADDITIONAL));
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    private DnsResolver resolver() {
+        var cache = new DnsCacheSettings(
+            false,
+            new ServeStaleSettings(false, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(1), Duration.ofSeconds(60)),
+            SnapshotSettings.DISABLED
+        );
+        var search = new SearchSettings(false, null, null, Duration.ofMinutes(5));
+        var properties = new DnsProperties(
+            DnsDiscovery.STATIC,
+            List.of(),
+            List.of(),
+            8,
+            Duration.ofSeconds(1),
+            cache,
+            search,
+            true,
+            Duration.ofSeconds(30),
+            new HedgingSettings(false, 0.95, Duration.ofMillis(50), 3, Duration.ofSeconds(30))
+        );
+        return new DnsResolver(
+            upstream,
+            properties,
+            new DnsCache(Clock.systemUTC(), cache),
+            new QueryPlanner(Clock.systemUTC(), search, List.of(), 1)
+        );
+    }
+
+}
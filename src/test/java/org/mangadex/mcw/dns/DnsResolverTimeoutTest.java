@@ -0,0 +1,139 @@
+package org.mangadex.mcw.dns;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.DnsProperties.DnsDiscovery;
+import org.mangadex.mcw.dns.DnsProperties.HedgingSettings;
+import org.mangadex.mcw.dns.DnsProperties.SearchSettings;
+import org.mangadex.mcw.dns.DnsProperties.ServeStaleSettings;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.cache.DnsCache;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolutionFailure;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+class DnsResolverTimeoutTest {
+
+    private static final DnsRequest SLOW = new DnsRequest(RequestType.A, "slow.mcw.mangadex.");
+    private static final DnsRequest BROKEN = new DnsRequest(RequestType.A, "broken.mcw.mangadex.");
+    private static final DnsRequest QUEUED = new DnsRequest(RequestType.A, "queued.mcw.mangadex.");
+
+    private final Resolver upstream = mock(Resolver.class);
+    private final Map<String, Function<Message, CompletionStage<Message>>> answers = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        // slow never answers at all, broken fails right away, and queued answers within the timeout once sent
+        answers.put(SLOW.name(), _ -> new CompletableFuture<>());
+        answers.put(BROKEN.name(), _ -> CompletableFuture.failedFuture(new IOException("Connection refused")));
+        answers.put(QUEUED.name(), query -> CompletableFuture.supplyAsync(
+            () -> answer(query, "10.0.0.1"),
+            CompletableFuture.delayedExecutor(200, MILLISECONDS)
+        ));
+
+        doAnswer(invocation -> send(invocation.getArgument(0))).when(upstream).sendAsync(any(Message.class));
+        doAnswer(invocation -> send(invocation.getArgument(0))).when(upstream).sendAsync(any(Message.class), any(Executor.class));
+    }
+
+    @Test
+    void reportsLookupsWhichNeverCompleteAsTimedOut() throws Exception {
+        var resolution = resolver(8, Duration.ofMillis(100)).resolveAsync(SLOW).toCompletableFuture();
+
+        assertThat(resolution.get(5, TimeUnit.SECONDS)).isInstanceOfSatisfying(
+            DnsResolutionFailure.class,
+            failure -> assertThat(failure.cause()).isInstanceOf(TimeoutException.class)
+        );
+    }
+
+    @Test
+    void reportsUpstreamFailuresAsResolutionFailures() throws Exception {
+        var resolution = resolver(8, Duration.ofSeconds(1)).resolveAsync(BROKEN).toCompletableFuture();
+
+        assertThat(resolution.get(5, TimeUnit.SECONDS)).isInstanceOfSatisfying(
+            DnsResolutionFailure.class,
+            failure -> assertThat(failure.cause()).isInstanceOf(IOException.class).hasMessage("Connection refused")
+        );
+    }
+
+    @Test
+    void startsTimeoutOnceLookupLeftTheQueue() throws Exception {
+        var resolver = resolver(1, Duration.ofMillis(300));
+
+        // queued waits behind slow for a whole timeout, then takes 200ms more to answer, which is still within its own timeout
+        var slow = resolver.resolveAsync(SLOW).toCompletableFuture();
+        var queued = resolver.resolveAsync(QUEUED).toCompletableFuture();
+
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isInstanceOf(DnsResolutionFailure.class);
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            success -> assertThat(success.records()).hasSize(1)
+        );
+    }
+
+    private CompletionStage<Message> send(Message query) {
+        return answers.get(query.getQuestion().getName().toString()).apply(query);
+    }
+
+    private static Message answer(Message query, String ip) {
+        var response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        response.addRecord(ARecord(query.getQuestion().getName().toString(), 30, ip), Section.ANSWER);
+        return response;
+    }
+
+    private DnsResolver resolver(int maxInFlight, Duration timeout) {
+        var cache = new DnsCacheSettings(
+            false,
+            new ServeStaleSettings(false, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(1), Duration.ofSeconds(60)),
+            SnapshotSettings.DISABLED
+        );
+        var search = new SearchSettings(false, null, null, Duration.ofMinutes(5));
+        var properties = new DnsProperties(
+            DnsDiscovery.STATIC,
+            List.of(),
+            List.of(),
+            maxInFlight,
+            timeout,
+            cache,
+            search,
+            false,
+            Duration.ofSeconds(30),
+            new HedgingSettings(false, 0.95, Duration.ofMillis(50), 3, Duration.ofSeconds(30))
+        );
+        return new DnsResolver(
+            upstream,
+            properties,
+            new DnsCache(Clock.systemUTC(), cache),
+            new QueryPlanner(Clock.systemUTC(), search, List.of(), 1)
+        );
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.mangadex.mcw.dns;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+class InFlightLimiterTest {
+
+    @Test
+    void queuesOverLimitAndStartsInOrder() {
+        var limiter = new InFlightLimiter(2);
+        List<CompletableFuture<Integer>> upstream = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            var id = i;
+            results.add(limiter.submit(() -> {
+                started.add(id);
+                var future = new CompletableFuture<Integer>();
+                upstream.add(future);
+                return future;
+            }));
+        }
+
+        assertThat(started).containsExactly(0, 1);
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(limiter.queued()).isEqualTo(3);
+
+        upstream.get(1).complete(1);
+        assertThat(started).containsExactly(0, 1, 2);
+        assertThat(results.get(1)).isCompletedWithValue(1);
+
+        upstream.get(0).completeExceptionally(new IllegalStateException("boom"));
+        assertThat(started).containsExactly(0, 1, 2, 3);
+        assertThatThrownBy(results.get(0)::join)
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(IllegalStateException.class);
+
+        upstream.get(2).complete(2);
+        upstream.get(3).complete(3);
+        upstream.get(4).complete(4);
+        assertThat(results).allSatisfy(r -> assertThat(r).isDone());
+        assertThat(limiter.inFlight()).isZero();
+        assertThat(limiter.queued()).isZero();
+    }
+
+    @Test
+    void drainsSynchronousCompletionsWithoutRecursion() {
+        var limiter = new InFlightLimiter(1);
+        var gate = new CompletableFuture<Integer>();
+        var first = limiter.submit(() -> gate);
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            var id = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(id)));
+        }
+
+        gate.complete(-1);
+        assertThat(first).isCompletedWithValue(-1);
+        assertThat(results.getLast()).isCompletedWithValue(99_999);
+    }
+
+    @Test
+    void failsOperationsThrowingSynchronously() {
+        var limiter = new InFlightLimiter(1);
+        var result = limiter.submit(() -> {
+            throw new IllegalArgumentException("bad request");
+        });
+
+        assertThat(result).isCompletedExceptionally();
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+}
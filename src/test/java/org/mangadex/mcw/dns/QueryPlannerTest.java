@@ -0,0 +1,235 @@
+package org.mangadex.mcw.dns;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.NoSuchRRSetException;
+import org.xbill.DNS.lookup.ServerFailedException;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsProperties.SearchSettings;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+
+class QueryPlannerTest {
+
+    private static final List<String> SEARCH = List.of("mcw.svc.cluster.local", "svc.cluster.local", "cluster.local");
+
+    private final TestClock clock = new TestClock();
+    private final List<String> queried = new CopyOnWriteArrayList<>();
+
+    @Test
+    void ordersExpansionsByNumberOfDots() {
+        var planner = planner(5);
+
+        assertThat(planner.candidates("memcache.mcw")).extracting(Name::toString).containsExactly(
+            "memcache.mcw.mcw.svc.cluster.local.",
+            "memcache.mcw.svc.cluster.local.",
+            "memcache.mcw.cluster.local.",
+            "memcache.mcw."
+        );
+        assertThat(planner(4).candidates("memcache.mcw.svc.cluster.local")).extracting(Name::toString).containsExactly(
+            "memcache.mcw.svc.cluster.local.",
+            "memcache.mcw.svc.cluster.local.mcw.svc.cluster.local.",
+            "memcache.mcw.svc.cluster.local.svc.cluster.local.",
+            "memcache.mcw.svc.cluster.local.cluster.local."
+        );
+    }
+
+    @Test
+    void neverPlansFullyQualifiedNames() {
+        var planner = planner(5);
+
+        assertThat(planner.plans(new DnsRequest(RequestType.A, "memcache.mcw.svc.cluster.local."))).isFalse();
+        assertThat(planner.plans(new DnsRequest(RequestType.A, "memcache.mcw"))).isTrue();
+        assertThat(new QueryPlanner(clock, new SearchSettings(false, SEARCH, 5, Duration.ofMinutes(5)), List.of(), 1).plans(
+            new DnsRequest(RequestType.A, "memcache.mcw")
+        )).isFalse();
+    }
+
+    @Test
+    void remembersPlansAndNonExistentExpansionsForTheirSOAMinimum() {
+        var planner = planner(5);
+        var request = new DnsRequest(RequestType.A, "memcache.mcw");
+        var existing = Set.of("memcache.mcw.svc.cluster.local.");
+
+        assertThat(plan(planner, request, existing)).hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.", "memcache.mcw.svc.cluster.local.");
+
+        // later lookups only ever query the planned name
+        queried.clear();
+        assertThat(plan(planner, request, existing)).hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).isEmpty();
+        assertThat(planner.planned()).isEqualTo(1);
+
+        // other names are not probed against expansions known not to exist
+        var other = new DnsRequest(RequestType.SRV, "memcache.mcw");
+        assertThat(plan(planner, other, existing)).hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.svc.cluster.local.");
+        assertThat(planner.negative()).isEqualTo(1);
+
+        // once the expansion which does not exist may exist again, the name is planned again
+        queried.clear();
+        clock.advanceSeconds(30);
+        assertThat(plan(planner, request, Set.of("memcache.mcw.mcw.svc.cluster.local."))).hasToString("memcache.mcw.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.");
+    }
+
+    @Test
+    void failsNamesWithoutAnyExistingExpansion() {
+        var planner = planner(1);
+        var request = new DnsRequest(RequestType.A, "memcache");
+
+        assertPlanFails(planner, request);
+        assertThat(queried).hasSize(4);
+        assertThat(planner.nxdomain()).isEqualTo(4);
+
+        queried.clear();
+        assertPlanFails(planner, request);
+        assertThat(queried).isEmpty();
+    }
+
+    @Test
+    void neverPlansExpansionsFoundAfterOneWhichFailed() {
+        var planner = planner(5);
+        var request = new DnsRequest(RequestType.A, "memcache.mcw");
+        var existing = Set.of("memcache.mcw.mcw.svc.cluster.local.", "memcache.mcw.svc.cluster.local.");
+        var failing = Set.of("memcache.mcw.mcw.svc.cluster.local.");
+
+        // the first expansion failing transiently is skipped, as the system resolver would, but the next one is not planned
+        assertThat(planner.plan(request, query -> respond(query, existing, failing)).toCompletableFuture().join().qname())
+            .hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.", "memcache.mcw.svc.cluster.local.");
+        assertThat(planner.failed()).isEqualTo(1);
+
+        // so that once the first expansion recovers, it is planned instead
+        queried.clear();
+        assertThat(plan(planner, request, existing)).hasToString("memcache.mcw.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.");
+
+        queried.clear();
+        assertThat(plan(planner, request, existing)).hasToString("memcache.mcw.mcw.svc.cluster.local.");
+        assertThat(queried).isEmpty();
+    }
+
+    @Test
+    void failsTransientlyRatherThanAsNonExistentWhenAnExpansionFailed() {
+        var planner = planner(1);
+        var request = new DnsRequest(RequestType.A, "memcache");
+
+        var plan = planner.plan(request, query -> respond(query, Set.of(), Set.of("memcache.svc.cluster.local."))).toCompletableFuture();
+        assertThat(plan.handle((_, e) -> e).join()).isInstanceOf(ServerFailedException.class);
+        assertThat(queried).hasSize(4);
+    }
+
+    @Test
+    void skipsExpansionsWithoutRecordsOfTheRequestedType() {
+        var planner = planner(5);
+        var request = new DnsRequest(RequestType.A, "memcache.mcw");
+        var existing = Set.of("memcache.mcw.svc.cluster.local.");
+        var empty = Set.of("memcache.mcw.mcw.svc.cluster.local.");
+
+        assertThat(planner.plan(request, query -> respond(query, existing, Set.of(), empty)).toCompletableFuture().join().qname())
+            .hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.", "memcache.mcw.svc.cluster.local.");
+        assertThat(planner.nodata()).isEqualTo(1);
+
+        // the plan is kept until the expansion skipped may have records, as it would then take precedence
+        queried.clear();
+        assertThat(plan(planner, request, existing)).hasToString("memcache.mcw.svc.cluster.local.");
+        assertThat(queried).isEmpty();
+
+        // without remembering it as non-existent, as it may have records of other types
+        clock.advanceSeconds(30);
+        assertThat(plan(planner, request, Set.of("memcache.mcw.mcw.svc.cluster.local."))).hasToString("memcache.mcw.mcw.svc.cluster.local.");
+        assertThat(queried).containsExactly("memcache.mcw.mcw.svc.cluster.local.");
+        assertThat(planner.negative()).isZero();
+    }
+
+    @Test
+    void failsNamesWithoutRecordsOfTheRequestedTypeInAnyExpansion() {
+        var planner = planner(1);
+        var request = new DnsRequest(RequestType.A, "memcache");
+
+        var plan = planner.plan(request, query -> respond(query, Set.of(), Set.of(), Set.of("memcache.svc.cluster.local."))).toCompletableFuture();
+        assertThat(plan.handle((_, e) -> e).join()).isInstanceOf(NoSuchRRSetException.class);
+        assertThat(queried).hasSize(4);
+    }
+
+    private void assertPlanFails(QueryPlanner planner, DnsRequest request) {
+        var plan = planner.plan(request, query -> respond(query, Set.of())).toCompletableFuture();
+        assertThat(plan).isCompletedExceptionally();
+        assertThat(plan.handle((_, e) -> e).join()).isInstanceOf(NoSuchDomainException.class);
+    }
+
+    private QueryPlanner planner(int ndots) {
+        return new QueryPlanner(clock, new SearchSettings(true, SEARCH, ndots, Duration.ofMinutes(5)), List.of(), 1);
+    }
+
+    private Name plan(QueryPlanner planner, DnsRequest request, Set<String> existing) {
+        try {
+            return planner.plan(request, query -> respond(query, existing)).toCompletableFuture().join().qname();
+        } catch (CompletionException e) {
+            throw new AssertionError("Planning failed", e.getCause());
+        }
+    }
+
+    private CompletionStage<Message> respond(Message query, Set<String> existing) {
+        return respond(query, existing, Set.of());
+    }
+
+    private CompletionStage<Message> respond(Message query, Set<String> existing, Set<String> failing) {
+        return respond(query, existing, failing, Set.of());
+    }
+
+    private CompletionStage<Message> respond(Message query, Set<String> existing, Set<String> failing, Set<String> empty) {
+        var qname = query.getQuestion().getName();
+        queried.add(qname.toString());
+
+        var response = new Message(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        if (failing.contains(qname.toString())) {
+            response.getHeader().setRcode(Rcode.SERVFAIL);
+        } else if (empty.contains(qname.toString())) {
+            response.addRecord(soa(), Section.AUTHORITY);
+        } else if (existing.contains(qname.toString())) {
+            var record = query.getQuestion().getType() == Type.SRV
+                ? SRVRecord(qname.toString(), 60, 10, 10, 11211, "memcache-1.mcw.mangadex")
+                : ARecord(qname.toString(), 60, "10.0.0.1");
+            response.addRecord(record, Section.ANSWER);
+        } else {
+            response.getHeader().setRcode(Rcode.NXDOMAIN);
+            response.addRecord(soa(), Section.AUTHORITY);
+        }
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static SOARecord soa() {
+        try {
+            var zone = Name.fromString("cluster.local.");
+            return new SOARecord(zone, DClass.IN, 30, Name.fromString("ns.dns", zone), Name.fromString("hostmaster", zone), 1, 7200, 1800, 86400, 30);
+        } catch (TextParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
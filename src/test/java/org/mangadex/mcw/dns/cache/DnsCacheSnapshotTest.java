@@ -0,0 +1,175 @@
+package org.mangadex.mcw.dns.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xbill.DNS.Record;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.DnsProperties.ServeStaleSettings;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolution;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+class DnsCacheSnapshotTest {
+
+    private static final DnsRequest A = new DnsRequest(RequestType.A, "memcache.mcw.mangadex");
+    private static final DnsRequest SRV = new DnsRequest(RequestType.SRV, "_memcache._tcp.memcache.mcw.mangadex");
+
+    private final TestClock clock = new TestClock();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void restoresAnswersWithTheirRemainingTTL() {
+        var a = new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1"), ARecord(A.name(), 60, "10.0.0.2")));
+        var srv = new DnsResolutionSuccess(List.of(SRVRecord(SRV.name(), 300, 10, 10, 11211, "memcache-1.mcw.mangadex")));
+        var previous = cache();
+        resolve(previous, A, a);
+        resolve(previous, SRV, srv);
+        snapshot(previous).save();
+
+        clock.advanceSeconds(20);
+        var restored = cache();
+        snapshot(restored).load();
+        assertThat(restored.size()).isEqualTo(2);
+
+        var upstream = new CompletableFuture<DnsResolution>();
+        assertThat(restored.get(A, _ -> upstream).toCompletableFuture()).isCompletedWithValueMatching(
+            hit -> ((DnsResolutionSuccess) hit).records().stream().map(Record::getTTL).allMatch(ttl -> ttl == 40L)
+        );
+        assertThat(restored.get(SRV, _ -> upstream).toCompletableFuture()).isCompletedWithValueMatching(
+            hit -> ((DnsResolutionSuccess) hit).records().stream().map(Record::rdataToString).toList().equals(
+                srv.records().stream().map(Record::rdataToString).toList()
+            )
+        );
+        assertThat(restored.hits()).isEqualTo(2);
+        assertThat(restored.misses()).isZero();
+    }
+
+    @Test
+    void servesExpiredRestoredAnswersWhileRefreshingInBackground() {
+        var answer = new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1")));
+        var previous = cache();
+        resolve(previous, A, answer);
+        snapshot(previous).save();
+
+        clock.advanceSeconds(600);
+        var restored = cache();
+        snapshot(restored).load();
+
+        // upstream is degraded, yet the restored answer is served right away
+        var upstream = new CompletableFuture<DnsResolution>();
+        var served = restored.get(A, _ -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+        assertThat(served.toCompletableFuture()).isCompletedWithValueMatching(
+            stale -> ((DnsResolutionSuccess) stale).records().stream().map(Record::getTTL).allMatch(ttl -> ttl == 30L)
+        );
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(restored.restored()).isEqualTo(1);
+
+        var refreshed = new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.2")));
+        upstream.complete(refreshed);
+        assertThat(restored.get(A, _ -> CompletableFuture.failedFuture(new IOException("unexpected"))).toCompletableFuture())
+            .isCompletedWithValue(refreshed);
+    }
+
+    @Test
+    void dropsAnswersTooOldToServe() {
+        var previous = cache();
+        resolve(previous, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1"))));
+        snapshot(previous).save();
+
+        clock.advanceSeconds(60 + 3601);
+        var restored = cache();
+        snapshot(restored).load();
+        assertThat(restored.size()).isZero();
+    }
+
+    @Test
+    void onlySavesWhenAnswersChanged() throws IOException {
+        var cache = cache();
+        var snapshot = snapshot(cache);
+        resolve(cache, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1"))));
+        snapshot.save();
+
+        var file = dir.resolve("dns.snapshot");
+        Files.delete(file);
+        snapshot.save();
+        assertThat(file).doesNotExist();
+
+        clock.advanceSeconds(60);
+        resolve(cache, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.2"))));
+        snapshot.save();
+        assertThat(file).isRegularFile();
+    }
+
+    @Test
+    void onlyRewritesUnchangedAnswersOnceHalfTheirMaxAgePassed() throws IOException {
+        var cache = cache();
+        var snapshot = snapshot(cache);
+        resolve(cache, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1"), ARecord(A.name(), 60, "10.0.0.2"))));
+        snapshot.save();
+
+        var file = dir.resolve("dns.snapshot");
+        Files.delete(file);
+
+        // refreshed with the same records, in another order and with another TTL
+        clock.advanceSeconds(60);
+        resolve(cache, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 30, "10.0.0.2"), ARecord(A.name(), 30, "10.0.0.1"))));
+        snapshot.save();
+        assertThat(file).doesNotExist();
+
+        // yet still rewritten eventually, so that their observed time in the snapshot does not get too old to restore
+        clock.advanceSeconds(30 * 60);
+        resolve(cache, A, new DnsResolutionSuccess(List.of(ARecord(A.name(), 60, "10.0.0.1"), ARecord(A.name(), 60, "10.0.0.2"))));
+        snapshot.save();
+        assertThat(file).isRegularFile();
+    }
+
+    @Test
+    void ignoresMissingOrCorruptSnapshots() throws IOException {
+        var cache = cache();
+        snapshot(cache).load();
+        assertThat(cache.size()).isZero();
+
+        Files.writeString(dir.resolve("dns.snapshot"), "not a snapshot");
+        snapshot(cache).load();
+        assertThat(cache.size()).isZero();
+    }
+
+    private DnsCache cache() {
+        return new DnsCache(clock, new DnsCacheSettings(
+            true,
+            new ServeStaleSettings(false, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(10), Duration.ofSeconds(40)),
+            new SnapshotSettings(true, dir.resolve("dns.snapshot"), Duration.ofHours(1))
+        ));
+    }
+
+    private DnsCacheSnapshot snapshot(DnsCache cache) {
+        return new DnsCacheSnapshot(clock, cache, new SnapshotSettings(true, dir.resolve("dns.snapshot"), Duration.ofHours(1)));
+    }
+
+    private static void resolve(DnsCache cache, DnsRequest request, DnsResolution answer) {
+        cache.get(request, _ -> CompletableFuture.completedFuture(answer)).toCompletableFuture().join();
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.mangadex.mcw.dns.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Record;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsProperties.DnsCacheSettings;
+import org.mangadex.mcw.dns.DnsProperties.ServeStaleSettings;
+import org.mangadex.mcw.dns.DnsProperties.SnapshotSettings;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolution;
+import org.mangadex.mcw.dns.response.DnsResolutionFailure;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+
+class DnsCacheTest {
+
+    private static final DnsRequest REQUEST = new DnsRequest(RequestType.A, "memcache.mcw.mangadex");
+
+    private final TestClock clock = new TestClock();
+    private final DnsCache cache = new DnsCache(clock, new DnsCacheSettings(
+        true,
+        new ServeStaleSettings(true, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofSeconds(10), Duration.ofSeconds(40)),
+        SnapshotSettings.DISABLED
+    ));
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void servesHitsWithDecrementedTTLUntilExpiry() {
+        var answer = new DnsResolutionSuccess(List.of(ARecord("memcache.mcw.mangadex", 60, "10.0.0.1")));
+
+        assertThat(resolve(_ -> answer)).isEqualTo(answer);
+        assertThat(upstreamCalls).hasValue(1);
+
+        clock.advanceSeconds(20);
+        assertThat(resolve(_ -> answer)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            hit -> assertThat(hit.records()).extracting(Record::getTTL).containsExactly(40L)
+        );
+        assertThat(upstreamCalls).hasValue(1);
+
+        clock.advanceSeconds(40);
+        resolve(_ -> answer);
+        assertThat(upstreamCalls).hasValue(2);
+
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotCacheFailures() {
+        var failure = new DnsResolutionFailure(new RuntimeException("SERVFAIL"));
+
+        assertThat(resolve(_ -> failure)).isEqualTo(failure);
+        assertThat(resolve(_ -> failure)).isEqualTo(failure);
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void servesStaleAnswerWhenUpstreamFailsAndBacksOffRetries() {
+        var answer = new DnsResolutionSuccess(List.of(ARecord("memcache.mcw.mangadex", 60, "10.0.0.1")));
+        var failure = new DnsResolutionFailure(new RuntimeException("SERVFAIL"));
+        resolve(_ -> answer);
+
+        clock.advanceSeconds(60);
+        assertThat(resolve(_ -> failure)).isInstanceOfSatisfying(
+            DnsResolutionSuccess.class,
+            stale -> assertThat(stale.records()).containsExactlyElementsOf(answer.records()).extracting(Record::getTTL).containsExactly(30L)
+        );
+        assertThat(upstreamCalls).hasValue(2);
+
+        // within backoff, upstream is left alone
+        clock.advanceSeconds(5);
+        assertThat(resolve(_ -> failure)).isInstanceOf(DnsResolutionSuccess.class);
+        assertThat(upstreamCalls).hasValue(2);
+
+        // past backoff, upstream is retried in the background, and backoff doubles on failure
+        clock.advanceSeconds(5);
+        assertThat(resolve(_ -> failure)).isInstanceOf(DnsResolutionSuccess.class);
+        assertThat(upstreamCalls).hasValue(3);
+        clock.advanceSeconds(10);
+        resolve(_ -> failure);
+        assertThat(upstreamCalls).hasValue(3);
+        clock.advanceSeconds(10);
+        resolve(_ -> failure);
+        assertThat(upstreamCalls).hasValue(4);
+
+        // recovers on the next successful revalidation
+        clock.advanceSeconds(40);
+        resolve(_ -> answer);
+        assertThat(upstreamCalls).hasValue(5);
+        assertThat(resolve(_ -> failure)).isEqualTo(answer);
+        assertThat(upstreamCalls).hasValue(5);
+    }
+
+    @Test
+    void stopsServingStaleAnswersPastMaxStale() {
+        var answer = new DnsResolutionSuccess(List.of(ARecord("memcache.mcw.mangadex", 60, "10.0.0.1")));
+        var failure = new DnsResolutionFailure(new RuntimeException("SERVFAIL"));
+        resolve(_ -> answer);
+
+        clock.advanceSeconds(60 + 3601);
+        assertThat(resolve(_ -> failure)).isEqualTo(failure);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void evictsAnswersNotLookedUpAnymorePastMaxStale() {
+        var answer = new DnsResolutionSuccess(List.of(ARecord("memcache.mcw.mangadex", 60, "10.0.0.1")));
+        resolve(_ -> answer);
+        assertThat(cache.answers()).hasSize(1);
+
+        // never looked up again, so neither written to snapshots nor kept once another answer is stored
+        clock.advanceSeconds(60 + 3601);
+        assertThat(cache.answers()).isEmpty();
+
+        var other = new DnsRequest(RequestType.A, "redis.mcw.mangadex");
+        cache.get(other, _ -> CompletableFuture.completedFuture(
+            new DnsResolutionSuccess(List.of(ARecord("redis.mcw.mangadex", 60, "10.0.0.2")))
+        )).toCompletableFuture().join();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.answers()).hasSize(1);
+    }
+
+    @Test
+    void coalescesConcurrentMisses() {
+        var upstream = new CompletableFuture<DnsResolution>();
+        var first = cache.get(REQUEST, _ -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+        var second = cache.get(REQUEST, _ -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(cache.coalesced()).isEqualTo(1);
+
+        var answer = new DnsResolutionSuccess(List.of(ARecord("memcache.mcw.mangadex", 60, "10.0.0.1")));
+        upstream.complete(answer);
+
+        assertThat(first.toCompletableFuture()).isCompletedWithValue(answer);
+        assertThat(second.toCompletableFuture()).isCompletedWithValue(answer);
+    }
+
+    private DnsResolution resolve(Function<DnsRequest, DnsResolution> upstream) {
+        return cache.get(REQUEST, request -> {
+            upstreamCalls.incrementAndGet();
+            return CompletableFuture.completedFuture(upstream.apply(request));
+        }).toCompletableFuture().join();
+    }
+
+}
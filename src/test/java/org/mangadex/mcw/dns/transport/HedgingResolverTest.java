@@ -0,0 +1,185 @@
+package org.mangadex.mcw.dns.transport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsProperties.HedgingSettings;
+import org.mangadex.mcw.dns.transport.HedgingResolver.Nameserver;
+
+class HedgingResolverTest {
+
+    private final TestClock clock = new TestClock();
+    private final HedgingMetrics metrics = new HedgingMetrics();
+    private final Resolver first = mock(Resolver.class);
+    private final Resolver second = mock(Resolver.class);
+    private final Resolver third = mock(Resolver.class);
+
+    @Test
+    void prefersTheFastestNameserver() throws Exception {
+        answerAfter(first, 50, "10.0.0.1");
+        answerAfter(second, 0, "10.0.0.2");
+        var resolver = resolver(Duration.ofSeconds(5));
+
+        // each nameserver is tried once while neither has answered yet, the fastest one is then preferred
+        for (int i = 0; i < 12; i++) {
+            assertThat(answer(resolver)).isNotNull();
+        }
+        verify(first, times(1)).sendAsync(any(Message.class), any(Executor.class));
+        verify(second, times(11)).sendAsync(any(Message.class), any(Executor.class));
+        assertThat(metrics.hedged()).isZero();
+    }
+
+    @Test
+    void hedgesQueriesToTheNextBestNameserverOnceSlow() throws Exception {
+        when(first.sendAsync(any(Message.class), any(Executor.class))).thenReturn(new CompletableFuture<>());
+        answerAfter(second, 0, "10.0.0.2");
+        var resolver = resolver(Duration.ofMillis(20));
+
+        assertThat(answer(resolver).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.2");
+        assertThat(metrics.hedged()).isEqualTo(1);
+        await().untilAsserted(() -> assertThat(metrics.hedgesWon()).isEqualTo(1));
+    }
+
+    @Test
+    void failsOverAndEjectsNameserversWhichKeepFailing() throws Exception {
+        when(first.sendAsync(any(Message.class), any(Executor.class))).thenReturn(CompletableFuture.failedFuture(new SocketTimeoutException()));
+        answerAfter(second, 0, "10.0.0.2");
+        var resolver = resolver(Duration.ofSeconds(5));
+
+        // failures are sent to the next best nameserver right away, rather than failing or waiting for the hedge
+        for (int i = 0; i < 5; i++) {
+            assertThat(answer(resolver).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.2");
+        }
+        assertThat(metrics.failovers()).isEqualTo(1);
+        assertThat(metrics.hedged()).isZero();
+        verify(first, times(1)).sendAsync(any(Message.class), any(Executor.class));
+
+        // once the other nameserver keeps failing as well, both are ejected, and then both tried again rather than none
+        doReturn(CompletableFuture.failedFuture(new IOException("down"))).when(second).sendAsync(any(Message.class), any(Executor.class));
+        for (int i = 0; i < 2; i++) {
+            assertThat(send(resolver).handle((_, e) -> e).get(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+        }
+        assertThat(metrics.ejections()).isEqualTo(1);
+        verify(first, times(3)).sendAsync(any(Message.class), any(Executor.class));
+
+        assertThat(send(resolver).handle((_, e) -> e).get(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+        assertThat(metrics.ejections()).isEqualTo(2);
+        verify(first, times(3)).sendAsync(any(Message.class), any(Executor.class));
+
+        assertThat(send(resolver).handle((_, e) -> e).get(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+        verify(first, times(4)).sendAsync(any(Message.class), any(Executor.class));
+    }
+
+    @Test
+    void failsOverDownTheRankingUntilANameserverAnswers() throws Exception {
+        when(first.sendAsync(any(Message.class), any(Executor.class))).thenReturn(CompletableFuture.failedFuture(new SocketTimeoutException()));
+        when(second.sendAsync(any(Message.class), any(Executor.class))).thenReturn(CompletableFuture.failedFuture(new IOException("down")));
+        answerAfter(third, 0, "10.0.0.3");
+        var resolver = new HedgingResolver(
+            clock,
+            List.of(new Nameserver("10.0.0.53:53", first), new Nameserver("10.0.1.53:53", second), new Nameserver("10.0.2.53:53", third)),
+            new HedgingSettings(true, 0.95, Duration.ofSeconds(5), 3, Duration.ofSeconds(30)),
+            metrics
+        );
+
+        assertThat(answer(resolver).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.3");
+        assertThat(metrics.failovers()).isEqualTo(2);
+        assertThat(metrics.hedged()).isZero();
+        verify(first, times(1)).sendAsync(any(Message.class), any(Executor.class));
+        verify(second, times(1)).sendAsync(any(Message.class), any(Executor.class));
+        verify(third, times(1)).sendAsync(any(Message.class), any(Executor.class));
+
+        // once all of them failed, so does the query, after having been sent to each of them once
+        doReturn(CompletableFuture.failedFuture(new IOException("down"))).when(third).sendAsync(any(Message.class), any(Executor.class));
+        assertThat(send(resolver).handle((_, e) -> e).get(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+        verify(third, times(2)).sendAsync(any(Message.class), any(Executor.class));
+    }
+
+    @Test
+    void readmitsEjectedNameserversAfterTheirEjection() throws Exception {
+        when(first.sendAsync(any(Message.class), any(Executor.class))).thenReturn(CompletableFuture.failedFuture(new SocketTimeoutException()));
+        when(second.sendAsync(any(Message.class), any(Executor.class))).thenReturn(CompletableFuture.failedFuture(new SocketTimeoutException()));
+        var resolver = resolver(Duration.ofSeconds(5));
+
+        for (int i = 0; i < 3; i++) {
+            send(resolver).handle((_, _) -> null).get(5, TimeUnit.SECONDS);
+        }
+        assertThat(metrics.ejections()).isEqualTo(2);
+
+        answerAfter(first, 0, "10.0.0.1");
+        clock.advanceSeconds(31);
+        assertThat(answer(resolver).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.1");
+    }
+
+    @Test
+    void exportsLatencyHistogramsPerNameserver() throws Exception {
+        answerAfter(first, 0, "10.0.0.1");
+        answerAfter(second, 0, "10.0.0.2");
+        var resolver = resolver(Duration.ofSeconds(5));
+        var registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+
+        answer(resolver);
+        answer(resolver);
+        var timers = registry.find("mcw.dns.nameserver.latency").timers();
+        assertThat(timers).hasSize(2).allSatisfy(timer -> assertThat(timer.count()).isEqualTo(1));
+    }
+
+    private HedgingResolver resolver(Duration minDelay) {
+        return new HedgingResolver(
+            clock,
+            List.of(new Nameserver("10.0.0.53:53", first), new Nameserver("10.0.1.53:53", second)),
+            new HedgingSettings(true, 0.95, minDelay, 3, Duration.ofSeconds(30)),
+            metrics
+        );
+    }
+
+    private static void answerAfter(Resolver resolver, long delayMillis, String ip) {
+        doAnswer(invocation -> {
+            Message query = invocation.getArgument(0);
+            var response = new Message(query.getHeader().getID());
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            response.addRecord(ARecord(query.getQuestion().getName().toString(), 30, ip), Section.ANSWER);
+            return CompletableFuture.supplyAsync(() -> response, CompletableFuture.delayedExecutor(delayMillis, MILLISECONDS));
+        }).when(resolver).sendAsync(any(Message.class), any(Executor.class));
+    }
+
+    private static Message answer(HedgingResolver resolver) throws Exception {
+        return send(resolver).get(5, TimeUnit.SECONDS);
+    }
+
+    private static CompletableFuture<Message> send(HedgingResolver resolver) throws Exception {
+        var query = Message.newQuery(Record.newRecord(Name.fromString("memcache.mcw.mangadex."), Type.A, DClass.IN));
+        return resolver.sendAsync(query, ForkJoinPool.commonPool()).toCompletableFuture();
+    }
+
+}
@@ -0,0 +1,36 @@
+package org.mangadex.mcw.dns.transport;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Resolver;
+
+import org.mangadex.mcw.dns.transport.HedgingResolver.Nameserver;
+
+class NameserversTest {
+
+    @Test
+    void closesResolversHoldingConnections() {
+        var failing = mock(PipelinedTcpResolver.class);
+        var pipelined = mock(PipelinedTcpResolver.class);
+        var simple = mock(Resolver.class);
+        doThrow(new IllegalStateException("already closed")).when(failing).close();
+
+        new Nameservers(List.of(
+            new Nameserver("10.0.0.53:53", failing),
+            new Nameserver("10.0.1.53:53", simple),
+            new Nameserver("10.0.2.53:53", pipelined)
+        )).close();
+
+        // one resolver failing to close does not leave the others open
+        verify(failing).close();
+        verify(pipelined).close();
+        verifyNoInteractions(simple);
+    }
+
+}
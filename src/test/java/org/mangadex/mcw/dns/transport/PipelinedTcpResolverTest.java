@@ -0,0 +1,189 @@
+package org.mangadex.mcw.dns.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+class PipelinedTcpResolverTest {
+
+    private final TcpTransportMetrics metrics = new TcpTransportMetrics();
+    private final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private ServerSocket server;
+    private PipelinedTcpResolver resolver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(this::accept);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (resolver != null) {
+            resolver.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void pipelinesQueriesOverASingleConnection() throws Exception {
+        resolver = resolver(Duration.ofSeconds(30));
+        var queries = List.of(query("memcache-1.mcw.mangadex."), query("memcache-2.mcw.mangadex."), query("memcache-3.mcw.mangadex."));
+        var answers = queries.stream().map(query -> resolver.sendAsync(query, ForkJoinPool.commonPool()).toCompletableFuture()).toList();
+
+        // all queries are written before any of them is answered, which they then are in reverse order
+        var pending = List.of(take(), take(), take());
+        for (var query : pending.reversed()) {
+            var name = query.query().getQuestion().getName().toString();
+            reply(query, "10.0.0." + name.charAt("memcache-".length()));
+        }
+
+        for (int i = 0; i < queries.size(); i++) {
+            var answer = answers.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(answer.getHeader().getID()).isEqualTo(queries.get(i).getHeader().getID());
+            assertThat(answer.getQuestion()).isEqualTo(queries.get(i).getQuestion());
+            assertThat(answer.getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0." + (i + 1));
+        }
+        assertThat(accepted).hasValue(1);
+        assertThat(metrics.connectionsOpened()).isEqualTo(1);
+        assertThat(metrics.queriesSent()).isEqualTo(3);
+        await().untilAsserted(() -> assertThat(metrics.inFlight()).isZero());
+    }
+
+    @Test
+    void closesIdleConnectionsAndReconnectsOnDemand() throws Exception {
+        resolver = resolver(Duration.ofMillis(200));
+        var answer = resolver.sendAsync(query("memcache.mcw.mangadex."), ForkJoinPool.commonPool()).toCompletableFuture();
+        reply(take(), "10.0.0.1");
+        assertThat(answer.get(5, TimeUnit.SECONDS).getSection(Section.ANSWER)).hasSize(1);
+
+        await().untilAsserted(() -> {
+            assertThat(metrics.connectionsClosedIdle()).isEqualTo(1);
+            assertThat(metrics.connections()).isZero();
+        });
+
+        answer = resolver.sendAsync(query("memcache.mcw.mangadex."), ForkJoinPool.commonPool()).toCompletableFuture();
+        reply(take(), "10.0.0.2");
+        assertThat(answer.get(5, TimeUnit.SECONDS).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.2");
+        assertThat(accepted).hasValue(2);
+        assertThat(metrics.connectionsClosedError()).isZero();
+    }
+
+    @Test
+    void retriesQueriesPendingOnConnectionsClosedByTheNameserver() throws Exception {
+        resolver = resolver(Duration.ofSeconds(30));
+        var answer = resolver.sendAsync(query("memcache.mcw.mangadex."), ForkJoinPool.commonPool()).toCompletableFuture();
+        take().socket().close();
+
+        reply(take(), "10.0.0.1");
+        assertThat(answer.get(5, TimeUnit.SECONDS).getSection(Section.ANSWER)).extracting(Record::rdataToString).containsExactly("10.0.0.1");
+        assertThat(accepted).hasValue(2);
+        assertThat(metrics.queriesRetried()).isEqualTo(1);
+        assertThat(metrics.connectionsClosedError()).isEqualTo(1);
+    }
+
+    @Test
+    void failsQueriesOutstandingOnCloseWithoutReconnecting() throws Exception {
+        resolver = resolver(Duration.ofSeconds(30));
+        var answer = resolver.sendAsync(query("memcache.mcw.mangadex."), ForkJoinPool.commonPool()).toCompletableFuture();
+        take();
+
+        resolver.close();
+        assertThat(answer.handle((_, e) -> e).get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(IOException.class);
+        assertThat(metrics.queriesRetried()).isZero();
+
+        // nor does any query sent afterwards reconnect
+        var late = resolver.sendAsync(query("memcache.mcw.mangadex."), ForkJoinPool.commonPool()).toCompletableFuture();
+        assertThat(late.handle((_, e) -> e).get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(IOException.class);
+        assertThat(received.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(accepted).hasValue(1);
+        assertThat(metrics.connections()).isZero();
+    }
+
+    private PipelinedTcpResolver resolver(Duration idleTimeout) {
+        var resolver = new PipelinedTcpResolver(InetAddress.getLoopbackAddress(), idleTimeout, metrics);
+        resolver.setPort(server.getLocalPort());
+        resolver.setTimeout(Duration.ofSeconds(5));
+        return resolver;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                var socket = server.accept();
+                accepted.incrementAndGet();
+                Thread.ofVirtual().start(() -> read(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (socket) {
+            var in = new DataInputStream(socket.getInputStream());
+            var out = new DataOutputStream(socket.getOutputStream());
+            while (true) {
+                var bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                received.add(new Received(socket, out, new Message(bytes)));
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private Received take() throws InterruptedException {
+        var next = received.poll(5, TimeUnit.SECONDS);
+        assertThat(next).as("query received").isNotNull();
+        return next;
+    }
+
+    private static void reply(Received received, String ip) throws IOException {
+        var query = received.query();
+        var response = new Message(query.getHeader().getID());
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        response.addRecord(ARecord(query.getQuestion().getName().toString(), 30, ip), Section.ANSWER);
+
+        var bytes = response.toWire();
+        synchronized (received.out()) {
+            received.out().writeShort(bytes.length);
+            received.out().write(bytes);
+            received.out().flush();
+        }
+    }
+
+    private static Message query(String name) throws TextParseException {
+        return Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+    }
+
+    private record Received(Socket socket, DataOutputStream out, Message query) { }
+
+}
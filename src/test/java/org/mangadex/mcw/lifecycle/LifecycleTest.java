@@ -21,9 +21,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.context.ImportTestcontainers;
 
 import org.mangadex.mcw.dns.KnotSidecar;
+import org.mangadex.mcw.output.file.FSDirectoryOutput;
 import org.mangadex.mcw.output.file.FSOutput;
 import org.mangadex.mcw.output.file.FSOutput.Attributes;
+import org.mangadex.mcw.source.file.FSDirectorySource;
 import org.mangadex.mcw.source.file.FSSource;
+import org.mangadex.mcw.source.file.FSWatchMode;
 
 @SpringBootTest(properties = {
     // force 1s file check period
@@ -117,4 +120,60 @@ class LifecycleTest {
         lifecycler.stop();
     }
 
+    @Test
+    void registerDirectoryAndAddRemoveTemplates(@TempDir Path tempDir) throws IOException, JSONException {
+        Path sources = Files.createDirectory(tempDir.resolve("templates"));
+        Path outputs = Files.createDirectory(tempDir.resolve("rendered"));
+
+        @Language("JSON5")
+        String template = """
+            {
+              "pools": {
+                "test": {
+                  "servers": [
+                    "dns+1234://memcache-static-vip.mcw.mangadex"
+                  ]
+                }
+              }
+            }
+            """;
+        Files.writeString(sources.resolve("a.json"), template, StandardCharsets.UTF_8);
+
+        // the registry is shared with other tests, which may have stopped it already
+        lifecycler.start();
+        lifecycler.register(new MCRConfig(
+            new FSDirectorySource(sources, "*.json", Duration.ofSeconds(1L), FSWatchMode.EVENTS, Duration.ofSeconds(1L)),
+            new FSDirectoryOutput(outputs, Attributes.DEFAULT)
+        ));
+        await().atMost(3, SECONDS).until(() -> Files.exists(outputs.resolve("a.json")));
+
+        Files.writeString(sources.resolve("b.json"), template, StandardCharsets.UTF_8);
+        Files.writeString(sources.resolve("ignored.txt"), template, StandardCharsets.UTF_8);
+        await().atMost(3, SECONDS).until(() -> Files.exists(outputs.resolve("b.json")));
+
+        @Language("JSON")
+        String expected = """
+            {
+              "pools": {
+                "test": {
+                  "servers": [
+                    "10.0.0.0:1234"
+                  ]
+                }
+              }
+            }
+            """;
+        var actualA = Files.readString(outputs.resolve("a.json"));
+        var actualB = Files.readString(outputs.resolve("b.json"));
+        assertEquals("Content:\n" + actualA, expected, actualA, true);
+        assertEquals("Content:\n" + actualB, expected, actualB, true);
+        assertThat(outputs.resolve("ignored.txt")).doesNotExist();
+
+        // removed templates stop rendering, but keep their last render in place
+        Files.delete(sources.resolve("b.json"));
+        var lastModified = Files.getLastModifiedTime(outputs.resolve("b.json"));
+        await().pollDelay(2, SECONDS).until(() -> true);
+        assertThat(Files.getLastModifiedTime(outputs.resolve("b.json"))).isEqualTo(lastModified);
+    }
+
 }
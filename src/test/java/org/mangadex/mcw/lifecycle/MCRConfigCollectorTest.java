@@ -56,7 +56,12 @@ class MCRConfigCollectorTest {
         ));
 
         var argumentsWatch = new MCRConfig(
-            new FSSource(source, Duration.ofSeconds(sourceProperties.file().checkPeriodSeconds())),
+            new FSSource(
+                source,
+                Duration.ofSeconds(sourceProperties.file().checkPeriodSeconds()),
+                sourceProperties.file().mode(),
+                Duration.ofSeconds(sourceProperties.file().checkPeriodSeconds())
+            ),
             new FSOutput(output, Attributes.DEFAULT)
         );
 
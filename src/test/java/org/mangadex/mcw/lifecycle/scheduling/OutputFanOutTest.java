@@ -0,0 +1,144 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.function.ThrowingConsumer;
+
+import org.mangadex.mcw.output.Output;
+import org.mangadex.mcw.output.file.FSOutput;
+import org.mangadex.mcw.output.file.FSOutput.Attributes;
+import org.mangadex.mcw.render.Render;
+
+class OutputFanOutTest {
+
+    private static final Output OUTPUT_1 = new FSOutput(Path.of("/tmp/output-1.json"), Attributes.DEFAULT);
+    private static final Output OUTPUT_2 = new FSOutput(Path.of("/tmp/output-2.json"), Attributes.DEFAULT);
+    private static final Output OUTPUT_3 = new FSOutput(Path.of("/tmp/output-3.json"), Attributes.DEFAULT);
+
+    private final WatchScheduler scheduler = new WatchScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+    }
+
+    @Test
+    void writesToAllOutputsInParallel() throws Exception {
+        var started = new CountDownLatch(3);
+        ThrowingConsumer<String> awaitOthers = _ -> {
+            started.countDown();
+            if (!started.await(5, TimeUnit.SECONDS)) {
+                throw new IOException("Outputs were written one by one");
+            }
+        };
+
+        var fanOut = new OutputFanOut();
+        fanOut.add(OUTPUT_1, awaitOthers);
+        fanOut.add(OUTPUT_2, awaitOthers);
+        fanOut.add(OUTPUT_3, awaitOthers);
+
+        fanOut.acceptWithException("rendered");
+        assertThat(started.getCount()).isZero();
+    }
+
+    @Test
+    void retriesOnlyFailedOutputs() throws Exception {
+        List<String> written1 = new CopyOnWriteArrayList<>();
+        List<String> written2 = new CopyOnWriteArrayList<>();
+        var failing = new AtomicBoolean(true);
+
+        var fanOut = new OutputFanOut();
+        assertThat(fanOut.add(OUTPUT_1, written1::add)).isTrue();
+        assertThat(fanOut.add(OUTPUT_2, rendered -> {
+            if (failing.get()) {
+                throw new IOException("Read-only file system");
+            }
+            written2.add(rendered);
+        })).isTrue();
+        assertThat(fanOut.add(OUTPUT_2, written2::add)).isFalse();
+
+        assertThatThrownBy(() -> fanOut.acceptWithException("v1"))
+            .isInstanceOf(IOException.class)
+            .hasMessage("Read-only file system");
+        assertThat(written1).containsExactly("v1");
+        assertThat(written2).isEmpty();
+
+        failing.set(false);
+        fanOut.acceptWithException("v1");
+        assertThat(written1).containsExactly("v1");
+        assertThat(written2).containsExactly("v1");
+
+        fanOut.acceptWithException("v1");
+        fanOut.acceptWithException("v2");
+        assertThat(written1).containsExactly("v1", "v2");
+        assertThat(written2).containsExactly("v1", "v2");
+    }
+
+    @Test
+    void reportsAllFailedOutputs() {
+        var fanOut = new OutputFanOut();
+        fanOut.add(OUTPUT_1, _ -> {
+            throw new IOException("No space left on device");
+        });
+        fanOut.add(OUTPUT_2, _ -> {
+            throw new IOException("Read-only file system");
+        });
+        fanOut.add(OUTPUT_3, _ -> { });
+
+        assertThatThrownBy(() -> fanOut.acceptWithException("v1"))
+            .isInstanceOf(IOException.class)
+            .hasMessage("Failed writing to 2 of 3 outputs")
+            .satisfies(e -> assertThat(e.getSuppressed()).hasSize(2));
+    }
+
+    @Test
+    void skipsSeededOutputsAlreadyHoldingRender() throws Exception {
+        List<String> written = new CopyOnWriteArrayList<>();
+
+        var fanOut = new OutputFanOut();
+        fanOut.add(OUTPUT_1, written::add, DigestUtils.md5DigestAsHex("v1".getBytes(StandardCharsets.UTF_8)));
+
+        fanOut.acceptWithException("v1");
+        assertThat(written).isEmpty();
+
+        fanOut.acceptWithException("v2");
+        assertThat(written).containsExactly("v2");
+    }
+
+    @Test
+    void redeliversLastRenderToAddedOutputs() {
+        List<String> written1 = new CopyOnWriteArrayList<>();
+        List<String> written2 = new CopyOnWriteArrayList<>();
+
+        var fanOut = new OutputFanOut();
+        fanOut.add(OUTPUT_1, written1::add);
+        var task = new ScheduledRenderTask(scheduler, template -> new Render(template, 3600L), fanOut, 0L);
+
+        task.templateChanged("t1");
+        await().atMost(2, TimeUnit.SECONDS).until(() -> written1.size() == 1);
+
+        fanOut.add(OUTPUT_2, written2::add);
+        task.redeliver();
+        await().atMost(2, TimeUnit.SECONDS).until(() -> written2.size() == 1);
+
+        assertThat(written1).containsExactly("t1");
+        assertThat(written2).containsExactly("t1");
+
+        task.stop();
+    }
+
+}
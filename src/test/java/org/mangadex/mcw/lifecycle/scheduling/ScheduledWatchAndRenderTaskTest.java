@@ -3,23 +3,35 @@ package org.mangadex.mcw.lifecycle.scheduling;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import org.mangadex.mcw.lifecycle.MCRConfigProperties.DebounceProperties;
 import org.mangadex.mcw.render.Render;
 
 class ScheduledWatchAndRenderTaskTest {
 
+    private final WatchScheduler scheduler = new WatchScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+    }
+
     @Test
     void successfulScheduling() throws InterruptedException {
         List<String> seen = new ArrayList<>();
         CountDownLatch latch = new CountDownLatch(5);
 
         var task = new ScheduledRenderTask(
+            scheduler,
             template -> new Render(latch.getCount() + " " + template, 1L),
             rendered -> {
                 seen.add(rendered);
@@ -54,6 +66,7 @@ class ScheduledWatchAndRenderTaskTest {
         CountDownLatch latch = new CountDownLatch(3);
 
         var task = new ScheduledRenderTask(
+            scheduler,
             template -> {
                 if (latch.getCount() == 2) {
                     latch.countDown();
@@ -79,4 +92,56 @@ class ScheduledWatchAndRenderTaskTest {
         task.stop();
     }
 
+    @Test
+    void rendersOnlyTheLatestTemplateOfABurst() {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        var metrics = new SchedulingMetrics();
+        var task = new ScheduledRenderTask(
+            scheduler,
+            (template, _) -> new Render(template, 3600L),
+            seen::add,
+            10L,
+            new DebounceProperties(Duration.ofMillis(200L), Duration.ofSeconds(10L)),
+            metrics
+        );
+
+        for (int i = 1; i <= 5; i++) {
+            task.templateChanged("t" + i);
+        }
+        await().atMost(2, TimeUnit.SECONDS).until(() -> seen.size() == 1);
+        await().pollDelay(300, TimeUnit.MILLISECONDS).until(() -> true);
+
+        assertThat(seen).containsExactly("t5");
+        assertThat(metrics.changesRendered()).isEqualTo(1L);
+        assertThat(metrics.changesCoalesced()).isEqualTo(4L);
+
+        task.stop();
+    }
+
+    @Test
+    void rendersSteadyStreamsOfChangesWithinMaxLatency() throws InterruptedException {
+        List<String> seen = new CopyOnWriteArrayList<>();
+        var metrics = new SchedulingMetrics();
+        var task = new ScheduledRenderTask(
+            scheduler,
+            (template, _) -> new Render(template, 3600L),
+            seen::add,
+            10L,
+            new DebounceProperties(Duration.ofMillis(200L), Duration.ofMillis(500L)),
+            metrics
+        );
+
+        // changes keep coming faster than the window for 1.5s
+        for (int i = 1; i <= 30; i++) {
+            task.templateChanged("t" + i);
+            Thread.sleep(50L);
+        }
+        await().atMost(2, TimeUnit.SECONDS).until(() -> seen.contains("t30"));
+
+        assertThat(seen).hasSizeBetween(3, 6);
+        assertThat(metrics.changesRendered() + metrics.changesCoalesced()).isEqualTo(30L);
+
+        task.stop();
+    }
+
 }
@@ -0,0 +1,146 @@
+package org.mangadex.mcw.lifecycle.scheduling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.mangadex.mcw.render.Render;
+
+class WatchSchedulerTest {
+
+    private final WatchScheduler scheduler = new WatchScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+    }
+
+    @Test
+    void runsTasksOfALaneOneAtATimeInOrder() {
+        var lane = scheduler.newLane("test");
+        var active = new AtomicInteger();
+        var overlapped = new AtomicBoolean(false);
+        List<Integer> seen = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            var n = i;
+            lane.submit(() -> {
+                if (active.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                Thread.yield();
+                seen.add(n);
+                active.decrementAndGet();
+            });
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> seen.size() == 100);
+        assertThat(overlapped).isFalse();
+        assertThat(seen).isSorted();
+    }
+
+    @Test
+    void cancellingARunningTaskInterruptsItButNotTheNextOne() throws InterruptedException {
+        var lane = scheduler.newLane("test");
+        var started = new CountDownLatch(1);
+        var interrupted = new AtomicBoolean(false);
+        var nextInterrupted = new AtomicBoolean(true);
+        var done = new CountDownLatch(1);
+
+        var blocking = lane.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000L);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        blocking.cancel(true);
+        lane.submit(() -> {
+            nextInterrupted.set(Thread.currentThread().isInterrupted());
+            done.countDown();
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(interrupted).isTrue();
+        assertThat(nextInterrupted).isFalse();
+    }
+
+    @Test
+    void cancelledDelayedTasksNeverRunNorLinger() throws InterruptedException {
+        var lane = scheduler.newLane("test");
+        var ran = new AtomicBoolean(false);
+
+        var delayed = lane.schedule(() -> ran.set(true), 100, TimeUnit.MILLISECONDS);
+        delayed.cancel(true);
+        assertThat(scheduler.pending()).isZero();
+
+        Thread.sleep(300L);
+        assertThat(ran).isFalse();
+    }
+
+    @Test
+    void dropsQueuedAndDelayedTasksOnShutdown() throws InterruptedException {
+        var lane = scheduler.newLane("test");
+        var ran = new AtomicInteger();
+
+        lane.schedule(ran::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+        lane.schedule(ran::incrementAndGet, 1, TimeUnit.HOURS);
+        lane.shutdownNow();
+        lane.submit(ran::incrementAndGet);
+        lane.schedule(ran::incrementAndGet, 0, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(300L);
+        assertThat(lane.isShutdown()).isTrue();
+        assertThat(ran).hasValue(0);
+        assertThat(scheduler.pending()).isZero();
+    }
+
+    /**
+     * 10k render tasks re-rendering every second, which used to take as many platform threads
+     */
+    @Test
+    void schedulesTenThousandRenderTasks() {
+        int watches = 10_000;
+        var threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+
+        var renders = new LongAdder();
+        var writes = new LongAdder();
+        List<ScheduledRenderTask> tasks = new ArrayList<>(watches);
+        for (int i = 0; i < watches; i++) {
+            var task = new ScheduledRenderTask(
+                scheduler,
+                template -> {
+                    renders.increment();
+                    return new Render(template, 1L);
+                },
+                _ -> writes.increment(),
+                1L
+            );
+            task.templateChanged("template-" + i);
+            tasks.add(task);
+        }
+
+        // every task writes its first render, then re-renders once its ttl is due
+        await().atMost(10, TimeUnit.SECONDS).until(() -> renders.sum() >= 2L * watches);
+        assertThat(writes.sum()).isEqualTo(watches);
+        assertThat(threads.getThreadCount() - threadsBefore).isLessThan(100);
+
+        tasks.forEach(ScheduledRenderTask::stop);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> scheduler.pending() == 0);
+    }
+
+}
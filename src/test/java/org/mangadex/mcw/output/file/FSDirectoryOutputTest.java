@@ -0,0 +1,34 @@
+package org.mangadex.mcw.output.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.mangadex.mcw.lifecycle.dsn.Dsn;
+
+class FSDirectoryOutputTest {
+
+    @SuppressWarnings("OctalInteger")
+    @Test
+    void parsesAndResolvesTemplateOutputs(@TempDir Path path) {
+        var dsn = Dsn.parse("file://" + path.toAbsolutePath() + "/?uid=123&mode=0640");
+        assertThat(FSDirectoryOutput.isDirectory(dsn)).isTrue();
+
+        var parsed = FSDirectoryOutput.parse(dsn);
+        assertThat(parsed.directory()).isEqualTo(path);
+
+        var resolved = parsed.resolve(Path.of("/etc/mcrouter/templates/pool-a.json"));
+        assertThat(resolved.path()).isEqualTo(path.resolve("pool-a.json"));
+        assertThat(resolved.attributes().uid()).isEqualTo(123);
+        assertThat(resolved.attributes().mode()).isEqualTo(0640);
+    }
+
+    @Test
+    void filesAreNotDirectories(@TempDir Path path) {
+        assertThat(FSDirectoryOutput.isDirectory(Dsn.parse("file://" + path.toAbsolutePath() + "/config.json"))).isFalse();
+    }
+
+}
@@ -8,6 +8,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mangadex.mcw.output.file.UnixModeUtils.toPermissions;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +19,7 @@ import org.junit.jupiter.api.condition.DisabledIf;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.DigestUtils;
 
 import org.mangadex.mcw.output.file.FSOutput.Attributes;
 
@@ -83,6 +85,19 @@ class FSWriterTest {
             .hasMessageContaining(output.path().toAbsolutePath().toString());
     }
 
+    @Test
+    void checksumsExistingOutput(@TempDir Path tempDir) throws IOException {
+        var content = "Hello World!";
+        var output = new FSOutput(tempDir.resolve("output"), Attributes.DEFAULT);
+        assertThat(fsWriter.checksum(output)).isNull();
+
+        fsWriter.flush(output, content);
+        assertThat(fsWriter.checksum(output)).isEqualTo(DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)));
+
+        Files.setPosixFilePermissions(output.path(), PosixFilePermissions.fromString("rw-------"));
+        assertThat(fsWriter.checksum(output)).isNull();
+    }
+
     private boolean isGithubCI() {
         return "true".equals(getenv("CI"));
     }
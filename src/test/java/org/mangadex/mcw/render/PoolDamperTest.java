@@ -0,0 +1,92 @@
+package org.mangadex.mcw.render;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.render.RenderPropertiesBuilder.renderProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.mangadex.mcw.render.RenderProperties.RenderDamping;
+
+class PoolDamperTest {
+
+    private final RenderMetrics metrics = new RenderMetrics();
+    private final PoolDamper damper = damper(new RenderDamping(true, 3, Duration.ofSeconds(30), Duration.ofSeconds(10)));
+
+    @Test
+    void doesNotDampFirstRender() {
+        var damped = damper.damp("pool", null, PoolDamping.NONE, List.of("a", "b"), 0L);
+
+        assertThat(damped.servers()).containsExactly("a", "b");
+        assertThat(damped.damping().isEmpty()).isTrue();
+    }
+
+    @Test
+    void keepsMissingServerInPlaceUntilMissingFromEnoughResolutions() {
+        var previous = List.of("a", "b", "c");
+
+        var first = damper.damp("pool", previous, PoolDamping.NONE, List.of("a", "c"), 0L);
+        assertThat(first.servers()).containsExactly("a", "b", "c");
+
+        var second = damper.damp("pool", first.servers(), first.damping(), List.of("a", "c"), 1000L);
+        assertThat(second.servers()).containsExactly("a", "b", "c");
+
+        var third = damper.damp("pool", second.servers(), second.damping(), List.of("a", "c"), 2000L);
+        assertThat(third.servers()).containsExactly("a", "c");
+        assertThat(third.damping().isEmpty()).isTrue();
+
+        assertThat(metrics.removalsSuppressed()).isEqualTo(1);
+        assertThat(metrics.removalsApplied()).isEqualTo(1);
+    }
+
+    @Test
+    void removesMissingServerAfterDelay() {
+        var first = damper.damp("pool", List.of("a", "b"), PoolDamping.NONE, List.of("b"), 0L);
+        assertThat(first.servers()).containsExactly("a", "b");
+        assertThat(damper.nextDueMillis(first.damping(), 0L)).isEqualTo(30_000L);
+
+        var second = damper.damp("pool", first.servers(), first.damping(), List.of("b"), 30_000L);
+        assertThat(second.servers()).containsExactly("b");
+    }
+
+    @Test
+    void holdsBackAdditionsForQuietPeriod() {
+        var first = damper.damp("pool", List.of("a"), PoolDamping.NONE, List.of("a", "b"), 0L);
+        assertThat(first.servers()).containsExactly("a");
+        assertThat(damper.nextDueMillis(first.damping(), 0L)).isEqualTo(10_000L);
+
+        var second = damper.damp("pool", first.servers(), first.damping(), List.of("a", "b"), 5_000L);
+        assertThat(second.servers()).containsExactly("a");
+
+        var third = damper.damp("pool", second.servers(), second.damping(), List.of("a", "b"), 10_000L);
+        assertThat(third.servers()).containsExactly("a", "b");
+
+        assertThat(metrics.additionsSuppressed()).isEqualTo(1);
+        assertThat(metrics.additionsApplied()).isEqualTo(1);
+    }
+
+    @Test
+    void forgetsAdditionWhichDisappearedDuringQuietPeriod() {
+        var first = damper.damp("pool", List.of("a"), PoolDamping.NONE, List.of("a", "b"), 0L);
+        var second = damper.damp("pool", first.servers(), first.damping(), List.of("a"), 5_000L);
+        var third = damper.damp("pool", second.servers(), second.damping(), List.of("a", "b"), 10_000L);
+
+        assertThat(third.servers()).containsExactly("a");
+        assertThat(metrics.additionsSuppressed()).isEqualTo(2);
+    }
+
+    @Test
+    void passesThroughWhenDisabled() {
+        var disabled = damper(new RenderDamping(false, 3, Duration.ofSeconds(30), Duration.ofSeconds(10)));
+
+        var damped = disabled.damp("pool", List.of("a", "b"), PoolDamping.NONE, List.of("b", "c"), 0L);
+        assertThat(damped.servers()).containsExactly("b", "c");
+    }
+
+    private PoolDamper damper(RenderDamping damping) {
+        return new PoolDamper(renderProperties().damping(damping).build(), metrics);
+    }
+
+}
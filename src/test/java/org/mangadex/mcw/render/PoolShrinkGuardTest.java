@@ -0,0 +1,93 @@
+package org.mangadex.mcw.render;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.InstanceOfAssertFactories.LIST;
+import static org.mangadex.mcw.render.RenderPropertiesBuilder.renderProperties;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.render.RenderProperties.RenderShrinkGuard;
+import org.mangadex.mcw.render.RenderProperties.ShrinkLimits;
+
+class PoolShrinkGuardTest {
+
+    private static final List<String> FOUR = List.of("a", "b", "c", "d");
+
+    private final RenderMetrics metrics = new RenderMetrics();
+    private final PoolShrinkGuard guard = guard(new RenderShrinkGuard(true, 2, 0.5, Map.of("small", new ShrinkLimits(0, 1.0))));
+
+    @Test
+    void letsPoolsShrinkWithinLimits() {
+        assertThat(guard.guard("pool", FOUR, null, List.of("a", "b")).servers()).containsExactly("a", "b");
+        assertThat(guard.guard("pool", FOUR, null, List.of("a", "b", "c", "d", "e")).servers()).hasSize(5);
+        assertThat(guard.guard("pool", null, null, List.of()).servers()).isEmpty();
+        assertThat(guard.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void holdsPoolsShrinkingTooMuchAtOnce() {
+        var held = guard.guard("pool", FOUR, null, List.of("a"));
+        assertThat(held.servers()).isEqualTo(FOUR);
+        assertThat(guard.guard("pool", FOUR, held.held(), List.of()).servers()).isEqualTo(FOUR);
+        assertThat(metrics.shrinksGuarded()).isEqualTo(2);
+        assertThat(guard.health().getStatus()).isEqualTo(PoolShrinkGuard.WARNING);
+        assertThat(guard.health().getDetails()).containsKey("held");
+    }
+
+    @Test
+    void holdsPoolsShrinkingBelowMinimum() {
+        assertThat(guard.guard("pool", List.of("a", "b"), null, List.of("a")).servers()).containsExactly("a", "b");
+    }
+
+    @Test
+    void releasesPoolOnceBackWithinLimits() {
+        var held = guard.guard("pool", FOUR, null, List.of()).held();
+        assertThat(guard.health().getStatus()).isEqualTo(PoolShrinkGuard.WARNING);
+
+        var stillHeld = guard.guard("pool", FOUR, held, List.of("a")).held();
+        assertThat(stillHeld).isNotNull();
+        assertThat(stillHeld.id()).isEqualTo(held.id());
+        assertThat(stillHeld.since()).isEqualTo(held.since());
+
+        assertThat(guard.guard("pool", FOUR, stillHeld, List.of("a", "b", "c")).held()).isNull();
+        assertThat(guard.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void keepsHoldingPoolsOfOtherTemplatesWithTheSameName() {
+        // two templates each render a pool named "pool", and only that of the first one shrinks
+        var held = guard.guard("pool", FOUR, null, List.of()).held();
+        assertThat(guard.guard("pool", FOUR, null, List.of("a", "b", "c", "d")).held()).isNull();
+        assertThat(guard.health().getStatus()).isEqualTo(PoolShrinkGuard.WARNING);
+
+        held = guard.guard("pool", FOUR, held, List.of()).held();
+        assertThat(guard.guard("pool", FOUR, null, List.of("a", "b", "c", "d")).held()).isNull();
+        assertThat(guard.health().getStatus()).isEqualTo(PoolShrinkGuard.WARNING);
+        assertThat(guard.health().getDetails().get("held")).asInstanceOf(LIST).containsExactly(held);
+
+        guard.guard("pool", FOUR, held, FOUR);
+        assertThat(guard.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void appliesPerPoolLimits() {
+        assertThat(guard.guard("small", FOUR, null, List.of()).servers()).isEmpty();
+    }
+
+    @Test
+    void passesThroughWhenDisabled() {
+        var disabled = guard(new RenderShrinkGuard(false, 2, 0.5, Map.of()));
+
+        assertThat(disabled.guard("pool", FOUR, null, List.of()).servers()).isEmpty();
+    }
+
+    private PoolShrinkGuard guard(RenderShrinkGuard shrinkGuard) {
+        return new PoolShrinkGuard(renderProperties().shrinkGuard(shrinkGuard).build(), metrics, new TestClock());
+    }
+
+}
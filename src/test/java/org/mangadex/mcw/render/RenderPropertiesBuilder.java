@@ -0,0 +1,73 @@
+package org.mangadex.mcw.render;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.mangadex.mcw.render.RenderProperties.Ordering;
+import org.mangadex.mcw.render.RenderProperties.RenderDamping;
+import org.mangadex.mcw.render.RenderProperties.RenderFallback;
+import org.mangadex.mcw.render.RenderProperties.RenderMode;
+import org.mangadex.mcw.render.RenderProperties.RenderShrinkGuard;
+import org.mangadex.mcw.render.RenderProperties.RenderTTL;
+
+/**
+ * Builds {@link RenderProperties} for unit tests, starting from settings which leave every optional behaviour disabled.
+ */
+public final class RenderPropertiesBuilder {
+
+    private int defaultPort = 11211;
+    private RenderTTL ttl = new RenderTTL(5, 3600);
+    private int concurrency = 4;
+    private RenderMode mode = RenderMode.TREE;
+    private Ordering ordering = Ordering.CANONICAL;
+    private RenderDamping damping = new RenderDamping(false, 1, Duration.ZERO, Duration.ZERO);
+    private RenderShrinkGuard shrinkGuard = new RenderShrinkGuard(false, 0, 1.0, Map.of());
+    private RenderFallback fallback = new RenderFallback(false, Duration.ZERO);
+
+    private RenderPropertiesBuilder() {
+    }
+
+    public static RenderPropertiesBuilder renderProperties() {
+        return new RenderPropertiesBuilder();
+    }
+
+    public RenderPropertiesBuilder ttl(RenderTTL ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public RenderPropertiesBuilder concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public RenderPropertiesBuilder mode(RenderMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public RenderPropertiesBuilder ordering(Ordering ordering) {
+        this.ordering = ordering;
+        return this;
+    }
+
+    public RenderPropertiesBuilder damping(RenderDamping damping) {
+        this.damping = damping;
+        return this;
+    }
+
+    public RenderPropertiesBuilder shrinkGuard(RenderShrinkGuard shrinkGuard) {
+        this.shrinkGuard = shrinkGuard;
+        return this;
+    }
+
+    public RenderPropertiesBuilder fallback(RenderFallback fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+
+    public RenderProperties build() {
+        return new RenderProperties(defaultPort, ttl, concurrency, mode, ordering, damping, shrinkGuard, fallback);
+    }
+
+}
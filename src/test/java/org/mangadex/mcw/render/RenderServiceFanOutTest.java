@@ -0,0 +1,168 @@
+package org.mangadex.mcw.render;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.render.RenderPropertiesBuilder.renderProperties;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.intellij.lang.annotations.Language;
+import org.junit.jupiter.api.Test;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsResolver;
+import org.mangadex.mcw.dns.cache.DnsCacheSnapshot;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.response.DnsResolution;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+import org.mangadex.mcw.render.RenderProperties.Ordering;
+import org.mangadex.mcw.render.template.TemplateCompiler;
+import org.mangadex.mcw.render.template.token.PoolTokenizer;
+
+class RenderServiceFanOutTest {
+
+    @Language("JSON")
+    private static final String TEMPLATE = """
+        {
+          "pools": {
+            "first": {
+              "servers": [
+                "dns+11211://memcache-1.mcw.mangadex",
+                "dns+11211://memcache-2.mcw.mangadex",
+                "dns+11211://memcache-3.mcw.mangadex"
+              ]
+            },
+            "second": {
+              "servers": [
+                "dns+11211://memcache-4.mcw.mangadex",
+                "dns+11211://memcache-5.mcw.mangadex",
+                "dns+11211://memcache-6.mcw.mangadex"
+              ]
+            }
+          }
+        }
+        """;
+
+    @Language("JSON")
+    private static final String RENDERED = """
+        {
+          "pools": {
+            "first": {
+              "servers": ["10.0.0.1:11211", "10.0.0.2:11211", "10.0.0.3:11211"]
+            },
+            "second": {
+              "servers": ["10.0.0.4:11211", "10.0.0.5:11211", "10.0.0.6:11211"]
+            }
+          }
+        }
+        """;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final LinkedBlockingDeque<Lookup> pending = new LinkedBlockingDeque<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @Test
+    void keepsTemplateOrderWhenLookupsCompleteInReverse() throws Exception {
+        var render = renderAsync(renderService(8));
+
+        // all lookups are sent at once, so that the render takes as long as its slowest lookup rather than their sum
+        await().untilAsserted(() -> assertThat(pending).hasSize(6));
+        assertThat(render).isNotDone();
+        while (!pending.isEmpty()) {
+            complete(pending.pollLast());
+        }
+
+        assertRendered(render.get(5, TimeUnit.SECONDS));
+        assertThat(peakInFlight).hasValue(6);
+    }
+
+    @Test
+    void boundsLookupsInFlightByConcurrency() throws Exception {
+        var render = renderAsync(renderService(2));
+
+        var completed = 0;
+        while (completed < 6) {
+            await().untilAsserted(() -> assertThat(pending).isNotEmpty());
+            assertThat(inFlight.get()).isLessThanOrEqualTo(2);
+            // lookups of each batch complete in reverse order of submission
+            var batch = new ArrayList<Lookup>();
+            pending.drainTo(batch);
+            for (var lookup : batch.reversed()) {
+                complete(lookup);
+                completed++;
+            }
+        }
+
+        assertRendered(render.get(5, TimeUnit.SECONDS));
+        assertThat(peakInFlight).hasValue(2);
+    }
+
+    private void complete(Lookup lookup) {
+        inFlight.decrementAndGet();
+        lookup.complete();
+    }
+
+    private void assertRendered(Render render) throws IOException {
+        assertThat(objectMapper.readTree(render.rendered())).isEqualTo(objectMapper.readTree(RENDERED));
+    }
+
+    private static CompletableFuture<Render> renderAsync(RenderService renderService) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return renderService.render(TEMPLATE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private RenderService renderService(int concurrency) {
+        var resolver = mock(DnsResolver.class);
+        when(resolver.resolveAsync(any())).thenAnswer(invocation -> {
+            var lookup = new Lookup(invocation.getArgument(0), new CompletableFuture<>());
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            pending.add(lookup);
+            return lookup.answer();
+        });
+
+        var renderProperties = renderProperties().concurrency(concurrency).ordering(Ordering.RESOLVED).build();
+        var compiler = new TemplateCompiler(objectMapper, new PoolTokenizer(renderProperties), renderProperties);
+        var metrics = new RenderMetrics();
+        var clock = new TestClock();
+        return new RenderService(
+            resolver,
+            mock(DnsCacheSnapshot.class),
+            objectMapper,
+            compiler,
+            new PoolDamper(renderProperties, metrics),
+            new PoolShrinkGuard(renderProperties, metrics, clock),
+            renderProperties,
+            metrics,
+            clock
+        );
+    }
+
+    private record Lookup(DnsRequest request, CompletableFuture<DnsResolution> answer) {
+
+        void complete() {
+            var index = request.name().charAt("memcache-".length());
+            answer.complete(new DnsResolutionSuccess(List.of(ARecord(request.name(), 30, "10.0.0." + index))));
+        }
+
+    }
+
+}
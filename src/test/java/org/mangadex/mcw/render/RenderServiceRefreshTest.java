@@ -0,0 +1,284 @@
+package org.mangadex.mcw.render;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+import static org.mangadex.mcw.render.RenderPropertiesBuilder.renderProperties;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.intellij.lang.annotations.Language;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Record;
+
+import org.mangadex.mcw.TestClock;
+import org.mangadex.mcw.dns.DnsResolver;
+import org.mangadex.mcw.dns.cache.DnsCacheSnapshot;
+import org.mangadex.mcw.dns.request.DnsRequest;
+import org.mangadex.mcw.dns.request.RequestType;
+import org.mangadex.mcw.dns.response.DnsResolutionFailure;
+import org.mangadex.mcw.dns.response.DnsResolutionSuccess;
+import org.mangadex.mcw.render.RenderProperties.RenderDamping;
+import org.mangadex.mcw.render.RenderProperties.RenderFallback;
+import org.mangadex.mcw.render.RenderProperties.RenderShrinkGuard;
+import org.mangadex.mcw.render.template.TemplateCompiler;
+import org.mangadex.mcw.render.template.token.PoolTokenizer;
+
+class RenderServiceRefreshTest {
+
+    private static final DnsRequest SRV = new DnsRequest(RequestType.SRV, "_memcache._tcp.memcache.mcw.mangadex");
+    private static final DnsRequest A_1 = new DnsRequest(RequestType.A, "memcache-1.mcw.mangadex.");
+    private static final DnsRequest A_2 = new DnsRequest(RequestType.A, "memcache-2.mcw.mangadex");
+
+    @Language("JSON")
+    private static final String TEMPLATE = """
+        {
+          "pools": {
+            "srv": { "servers": ["dnssrv://_memcache._tcp.memcache.mcw.mangadex"] },
+            "a": { "servers": ["dns+11211://memcache-2.mcw.mangadex"] }
+          }
+        }
+        """;
+
+    private final TestClock clock = new TestClock();
+    private final Map<DnsRequest, List<Record>> answers = new ConcurrentHashMap<>();
+    private final List<DnsRequest> lookups = new CopyOnWriteArrayList<>();
+
+    private final RenderMetrics metrics = new RenderMetrics();
+
+    private RenderService renderService;
+
+    @BeforeEach
+    void setUp() {
+        renderService = renderService(renderProperties());
+
+        answers.put(SRV, List.of(SRVRecord(SRV.name(), 300, 10, 10, 11211, A_1.name())));
+        answers.put(A_1, List.of(ARecord(A_1.name(), 30, "10.0.0.1")));
+        answers.put(A_2, List.of(ARecord(A_2.name(), 60, "10.0.0.2")));
+    }
+
+    @Test
+    void recordsDependenciesOfFullRender() throws Exception {
+        var render = renderService.render(TEMPLATE, null);
+
+        assertThat(render.ttl()).isEqualTo(30);
+        assertThat(render.dependencies()).containsOnlyKeys(SRV, A_1, A_2);
+        assertThat(render.dependencies().get(A_1).answer()).containsExactly("10.0.0.1");
+    }
+
+    @Test
+    void onlyLooksUpExpiredNamesAndReusesUnchangedRender() throws Exception {
+        var previous = renderService.render(TEMPLATE, null);
+        lookups.clear();
+
+        clock.advanceSeconds(30);
+        var refreshed = renderService.render(TEMPLATE, previous);
+
+        assertThat(lookups).containsExactly(A_1);
+        assertThat(refreshed.rendered()).isSameAs(previous.rendered());
+        assertThat(refreshed.md5sum()).isEqualTo(previous.md5sum());
+        assertThat(refreshed.changes()).isEmpty();
+        // A_2 now expires first, 30s after A_1 was refreshed
+        assertThat(refreshed.ttl()).isEqualTo(30);
+    }
+
+    @Test
+    void rendersAgainWhenAnExpiredAnswerChanged() throws Exception {
+        var previous = renderService.render(TEMPLATE, null);
+        lookups.clear();
+
+        answers.put(A_1, List.of(ARecord(A_1.name(), 30, "10.0.0.3")));
+        clock.advanceSeconds(30);
+        var refreshed = renderService.render(TEMPLATE, previous);
+
+        assertThat(lookups).contains(A_1, SRV, A_2);
+        assertThat(refreshed.rendered()).contains("10.0.0.3:11211").doesNotContain("10.0.0.1:11211");
+        assertThat(refreshed.changes()).containsExactly(new PoolChange("srv", List.of("10.0.0.3:11211"), List.of("10.0.0.1:11211")));
+        assertThat(refreshed.pools().get(1).serialized()).isSameAs(previous.pools().get(1).serialized());
+    }
+
+    @Test
+    void usesSRVGlueAndOnlyLooksUpTargetsWithout() throws Exception {
+        var target3 = "memcache-3.mcw.mangadex.";
+        answers.put(SRV, List.of(
+            SRVRecord(SRV.name(), 300, 10, 10, 11211, A_1.name()),
+            SRVRecord(SRV.name(), 300, 10, 10, 11211, target3),
+            ARecord(target3, 60, "10.0.0.3")
+        ));
+
+        var render = renderService.render(TEMPLATE, null);
+
+        assertThat(lookups).containsExactlyInAnyOrder(SRV, A_1, A_2);
+        assertThat(render.rendered()).contains("10.0.0.1:11211", "10.0.0.3:11211");
+        assertThat(metrics.namesResolved()).isEqualTo(3);
+        assertThat(metrics.namesGlued()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsEveryPoolAsChangedWithoutPreviousRender() throws Exception {
+        var render = renderService.render(TEMPLATE, null);
+
+        assertThat(render.changes()).containsExactly(
+            new PoolChange("srv", List.of("10.0.0.1:11211"), List.of()),
+            new PoolChange("a", List.of("10.0.0.2:11211"), List.of())
+        );
+    }
+
+    @Test
+    void reusesPreviousRenderWhenAChangedAnswerDoesNotChangeAnyPool() throws Exception {
+        var previous = renderService.render(TEMPLATE, null);
+
+        // same target, different SRV priority: the answer changed, but not the servers it resolves to
+        answers.put(SRV, List.of(SRVRecord(SRV.name(), 300, 20, 10, 11211, A_1.name())));
+        clock.advanceSeconds(300);
+        var refreshed = renderService.render(TEMPLATE, previous);
+
+        assertThat(refreshed.changes()).isEmpty();
+        assertThat(refreshed.rendered()).isSameAs(previous.rendered());
+    }
+
+    @Test
+    void rotatedAnswersRenderByteIdentically() throws Exception {
+        answers.put(A_2, List.of(ARecord(A_2.name(), 60, "10.0.0.2"), ARecord(A_2.name(), 60, "10.0.0.10"), ARecord(A_2.name(), 60, "10.0.0.3")));
+        var previous = renderService.render(TEMPLATE, null);
+
+        answers.put(A_2, List.of(ARecord(A_2.name(), 60, "10.0.0.3"), ARecord(A_2.name(), 60, "10.0.0.2"), ARecord(A_2.name(), 60, "10.0.0.10")));
+        var rotated = renderService.render(TEMPLATE, null);
+        assertThat(rotated.rendered()).isEqualTo(previous.rendered());
+
+        clock.advanceSeconds(60);
+        var refreshed = renderService.render(TEMPLATE, previous);
+        assertThat(refreshed.changes()).isEmpty();
+        assertThat(refreshed.rendered()).contains("\"10.0.0.2:11211\", \"10.0.0.3:11211\", \"10.0.0.10:11211\"");
+    }
+
+    @Test
+    void holdsBackRemovalOfFlappingServer() throws Exception {
+        var damped = renderService(renderProperties().damping(new RenderDamping(true, 3, Duration.ofMinutes(5), Duration.ZERO)));
+        var previous = damped.render(TEMPLATE, null);
+
+        answers.put(A_2, List.of());
+        clock.advanceSeconds(60);
+        var missingOnce = damped.render(TEMPLATE, previous);
+        assertThat(missingOnce.changes()).isEmpty();
+        assertThat(missingOnce.rendered()).isSameAs(previous.rendered());
+        assertThat(missingOnce.damped()).isTrue();
+
+        answers.put(A_2, List.of(ARecord(A_2.name(), 60, "10.0.0.2")));
+        clock.advanceSeconds(5);
+        var back = damped.render(TEMPLATE, missingOnce);
+        assertThat(back.changes()).isEmpty();
+        assertThat(back.damped()).isFalse();
+
+        assertThat(metrics.removalsSuppressed()).isEqualTo(1);
+        assertThat(metrics.removalsApplied()).isZero();
+    }
+
+    @Test
+    void removesServerMissingFromEnoughResolutions() throws Exception {
+        var damped = renderService(renderProperties().damping(new RenderDamping(true, 2, Duration.ofMinutes(5), Duration.ZERO)));
+        var previous = damped.render(TEMPLATE, null);
+
+        answers.put(A_2, List.of());
+        clock.advanceSeconds(60);
+        var missingOnce = damped.render(TEMPLATE, previous);
+        clock.advanceSeconds(5);
+        var missingTwice = damped.render(TEMPLATE, missingOnce);
+
+        assertThat(missingTwice.changes()).containsExactly(new PoolChange("a", List.of(), List.of("10.0.0.2:11211")));
+        assertThat(metrics.removalsSuppressed()).isEqualTo(1);
+        assertThat(metrics.removalsApplied()).isEqualTo(1);
+    }
+
+    @Test
+    void holdsPoolWhichWouldShrinkBeyondItsLimits() throws Exception {
+        var guarded = renderService(renderProperties().shrinkGuard(new RenderShrinkGuard(true, 1, 0.5, Map.of())));
+        var previous = guarded.render(TEMPLATE, null);
+
+        answers.put(SRV, List.of());
+        clock.advanceSeconds(300);
+        var truncated = guarded.render(TEMPLATE, previous);
+
+        assertThat(truncated.changes()).isEmpty();
+        assertThat(truncated.rendered()).isSameAs(previous.rendered());
+        assertThat(metrics.shrinksGuarded()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsLastServersOfPoolsWhichFailResolving() throws Exception {
+        var isolated = renderService(renderProperties().fallback(new RenderFallback(true, Duration.ofMinutes(5))));
+        var previous = isolated.render(TEMPLATE, null);
+
+        answers.remove(A_2);
+        answers.put(A_1, List.of(ARecord(A_1.name(), 30, "10.0.0.3")));
+        clock.advanceSeconds(60);
+        var degraded = isolated.render(TEMPLATE, previous);
+
+        assertThat(degraded.degradedPools()).containsExactly("a");
+        assertThat(degraded.changes()).containsExactly(new PoolChange("srv", List.of("10.0.0.3:11211"), List.of("10.0.0.1:11211")));
+        assertThat(degraded.rendered()).contains("10.0.0.2:11211", "10.0.0.3:11211");
+        assertThat(degraded.ttl()).isEqualTo(5);
+
+        answers.put(A_2, List.of(ARecord(A_2.name(), 60, "10.0.0.2")));
+        clock.advanceSeconds(5);
+        var recovered = isolated.render(TEMPLATE, degraded);
+        assertThat(recovered.degradedPools()).isEmpty();
+        assertThat(recovered.changes()).isEmpty();
+    }
+
+    @Test
+    void stopsFallingBackAfterMaxAge() throws Exception {
+        var isolated = renderService(renderProperties().fallback(new RenderFallback(true, Duration.ofMinutes(5))));
+        var previous = isolated.render(TEMPLATE, null);
+
+        answers.remove(A_2);
+        clock.advanceSeconds(60);
+        var degraded = isolated.render(TEMPLATE, previous);
+        clock.advanceSeconds(300);
+        var expired = isolated.render(TEMPLATE, degraded);
+
+        assertThat(expired.degradedPools()).containsExactly("a");
+        assertThat(expired.changes()).containsExactly(new PoolChange("a", List.of(), List.of("10.0.0.2:11211")));
+    }
+
+    @Test
+    void failsWholeRenderWithoutFallback() {
+        answers.remove(A_2);
+
+        assertThatThrownBy(() -> renderService.render(TEMPLATE, null)).hasMessageContaining("Cannot resolve A " + A_2.name());
+    }
+
+    private RenderService renderService(RenderPropertiesBuilder settings) {
+        var resolver = mock(DnsResolver.class);
+        when(resolver.resolveAsync(any())).thenAnswer(invocation -> {
+            DnsRequest request = invocation.getArgument(0);
+            lookups.add(request);
+            var answer = answers.get(request);
+            if (answer == null) {
+                return completedFuture(new DnsResolutionFailure(new IOException("Timed out resolving " + request.name())));
+            }
+            return completedFuture(new DnsResolutionSuccess(answer));
+        });
+
+        var renderProperties = settings.build();
+        var objectMapper = JsonMapper.builder().enable(SerializationFeature.INDENT_OUTPUT).build();
+        var compiler = new TemplateCompiler(objectMapper, new PoolTokenizer(renderProperties), renderProperties);
+        var damper = new PoolDamper(renderProperties, metrics);
+        var guard = new PoolShrinkGuard(renderProperties, metrics, clock);
+        return new RenderService(resolver, mock(DnsCacheSnapshot.class), objectMapper, compiler, damper, guard, renderProperties, metrics, clock);
+    }
+
+}
@@ -0,0 +1,96 @@
+package org.mangadex.mcw.render;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mangadex.mcw.dns.DnsRecordUtils.ARecord;
+import static org.mangadex.mcw.dns.DnsRecordUtils.SRVRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.Record;
+
+import org.mangadex.mcw.render.RenderProperties.Ordering;
+
+class ServerOrderingTest {
+
+    private static final List<Record> A_RECORDS = List.of(
+        ARecord("memcache.mcw.mangadex", 30, "10.0.0.2"),
+        ARecord("memcache.mcw.mangadex", 30, "10.0.0.10"),
+        ARecord("memcache.mcw.mangadex", 30, "192.168.0.1"),
+        ARecord("memcache.mcw.mangadex", 30, "10.0.0.1"),
+        ARecord("memcache.mcw.mangadex", 30, "9.255.255.255")
+    );
+
+    private static final List<Record> SRV_RECORDS = List.of(
+        SRVRecord("_memcache._tcp.mcw.mangadex", 30, 20, 100, 11211, "memcache-3.mcw.mangadex"),
+        SRVRecord("_memcache._tcp.mcw.mangadex", 30, 10, 100, 11211, "memcache-2.mcw.mangadex"),
+        SRVRecord("_memcache._tcp.mcw.mangadex", 30, 10, 50, 11211, "memcache-4.mcw.mangadex"),
+        SRVRecord("_memcache._tcp.mcw.mangadex", 30, 10, 100, 11211, "memcache-1.mcw.mangadex")
+    );
+
+    @Test
+    void ordersAddressesNumerically() {
+        assertThat(ServerOrdering.sort(A_RECORDS, Ordering.CANONICAL))
+            .extracting(Record::rdataToString)
+            .containsExactly("9.255.255.255", "10.0.0.1", "10.0.0.2", "10.0.0.10", "192.168.0.1");
+    }
+
+    @Test
+    void keepsAddressesInAnswerOrderWhenResolved() {
+        assertThat(ServerOrdering.sort(A_RECORDS, Ordering.RESOLVED)).containsExactlyElementsOf(A_RECORDS);
+    }
+
+    @Test
+    void ordersSrvByPriorityWeightThenTarget() {
+        assertThat(ServerOrdering.sort(SRV_RECORDS, Ordering.CANONICAL))
+            .extracting(Record::getAdditionalName)
+            .extracting(name -> name.toString(true))
+            .containsExactly("memcache-4.mcw.mangadex", "memcache-1.mcw.mangadex", "memcache-2.mcw.mangadex", "memcache-3.mcw.mangadex");
+    }
+
+    @RepeatedTest(20)
+    void identicalMembershipAlwaysOrdersIdentically() {
+        var random = new Random();
+        var canonicalA = ServerOrdering.sort(A_RECORDS, Ordering.CANONICAL);
+        var canonicalSRV = ServerOrdering.sort(SRV_RECORDS, Ordering.CANONICAL);
+
+        var shuffledA = new ArrayList<>(A_RECORDS);
+        Collections.shuffle(shuffledA, random);
+        var shuffledSRV = new ArrayList<>(SRV_RECORDS);
+        Collections.shuffle(shuffledSRV, random);
+
+        assertThat(ServerOrdering.sort(shuffledA, Ordering.CANONICAL)).containsExactlyElementsOf(canonicalA);
+        assertThat(ServerOrdering.sort(shuffledSRV, Ordering.CANONICAL)).containsExactlyElementsOf(canonicalSRV);
+    }
+
+    @Test
+    void slotStableKeepsSurvivorsAndFillsVacatedSlots() {
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "c", "d"), List.of("a", "c", "d", "e"))).containsExactly("a", "e", "c", "d");
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "c"), List.of("c", "x", "y", "z"))).containsExactly("x", "y", "c", "z");
+    }
+
+    @Test
+    void slotStableOnlyMovesTailServersWhenShrinking() {
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "c", "d", "e"), List.of("a", "c", "d", "e"))).containsExactly("a", "e", "c", "d");
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "c", "d", "e"), List.of("a", "b", "c"))).containsExactly("a", "b", "c");
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "c", "d", "e"), List.of("b", "e"))).containsExactly("e", "b");
+        assertThat(ServerOrdering.slotStable(List.of("a", "b"), List.of())).isEmpty();
+    }
+
+    @Test
+    void slotStableOnlyAppendsWhenGrowing() {
+        assertThat(ServerOrdering.slotStable(List.of("b", "a"), List.of("a", "b", "c", "d"))).containsExactly("b", "a", "c", "d");
+        assertThat(ServerOrdering.slotStable(List.of(), List.of("a", "b"))).containsExactly("a", "b");
+    }
+
+    @Test
+    void slotStableHandlesDuplicateServers() {
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "a"), List.of("a", "a", "c"))).containsExactly("a", "c", "a");
+        assertThat(ServerOrdering.slotStable(List.of("a", "b", "a"), List.of("a", "b"))).containsExactly("a", "b");
+    }
+
+}
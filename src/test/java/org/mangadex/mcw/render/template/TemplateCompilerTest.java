@@ -0,0 +1,131 @@
+package org.mangadex.mcw.render.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mangadex.mcw.render.RenderPropertiesBuilder.renderProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.intellij.lang.annotations.Language;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import org.mangadex.mcw.render.RenderConfiguration;
+import org.mangadex.mcw.render.RenderProperties.RenderMode;
+import org.mangadex.mcw.render.template.token.FixedToken;
+import org.mangadex.mcw.render.template.token.PoolTokenizer;
+
+@SpringBootTest(classes = {
+    JacksonAutoConfiguration.class,
+    PoolTokenizer.class,
+    RenderConfiguration.class,
+})
+class TemplateCompilerTest {
+
+    @Language("JSON5")
+    private static final String TEMPLATE = """
+        {
+            // comments and unquoted names are accepted
+            prefix: "before",
+            numbers: [1, -2, 1.5e3, 0.1, 12345678901234567890, true, null],
+            pools: {
+                "pool-a": {
+                    servers: ["foo:1234", "dns://memcache.mcw.mangadex"],
+                    "hash": "ketama",
+                },
+                "pool-b": {
+                    "options": { "servers": "not a pool", "unicode": "é\\u00e9\\n" },
+                    servers: [],
+                },
+            },
+            suffix: ["after", { servers: [1, 2] }, [], {}],
+        }
+        """;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PoolTokenizer tokenizer;
+
+    @ParameterizedTest
+    @EnumSource(RenderMode.class)
+    void splicesServersIntoStaticFragments(RenderMode mode) throws Exception {
+        var compiled = compiler(mode).compile(TEMPLATE);
+
+        assertThat(compiled.pools()).extracting(CompiledTemplate.CompiledPool::name).containsExactly("pool-a", "pool-b");
+        assertThat(compiled.pools().getFirst().tokens()).first().isEqualTo(new FixedToken("foo:1234"));
+        assertThat(compiled.fragments()).hasSize(3);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RenderMode.class)
+    void splicingIsIdenticalToSerializingTheWholeTree(RenderMode mode) throws Exception {
+        var compiled = compiler(mode).compile(TEMPLATE);
+
+        var poolA = List.of("10.0.0.1:1234", "10.0.0.2:11211");
+        List<String> poolB = List.of();
+
+        var expected = objectMapper.readTree(TEMPLATE);
+        var pools = expected.get("pools");
+        pools.get("pool-a").withArrayProperty("servers").removeAll().addAll(poolA.stream().map(TextNode::new).toList());
+        pools.get("pool-b").withArrayProperty("servers").removeAll().addAll(poolB.stream().map(TextNode::new).toList());
+
+        var serialized = new ArrayList<String>();
+        serialized.add(objectMapper.writeValueAsString(poolA));
+        serialized.add(objectMapper.writeValueAsString(poolB));
+
+        assertThat(compiled.splice(serialized)).isEqualTo(objectMapper.writeValueAsString(expected));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RenderMode.class)
+    void failsOnInvalidPoolsAtCompileTime(RenderMode mode) {
+        var compiler = compiler(mode);
+
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: { servers: null } } }"))
+            .hasMessageContaining("$.servers is null");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: 1 } }"))
+            .hasMessageContaining("is not a json object");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: { } } }"))
+            .hasMessageContaining("has no 'servers' field");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { } }"))
+            .isInstanceOf(InvalidTemplateException.class)
+            .hasMessageContaining("$.pools must be non-empty object");
+        assertThatThrownBy(() -> compiler.compile("[]"))
+            .isInstanceOf(InvalidTemplateException.class)
+            .hasMessageContaining("$.pools must be non-empty object");
+    }
+
+    @ParameterizedTest
+    @EnumSource(RenderMode.class)
+    void failsOnDuplicateNamesAnywhere(RenderMode mode) {
+        var compiler = compiler(mode);
+
+        // either mode would otherwise render them differently, ie keeping the last value or all of them
+        assertThatThrownBy(() -> compiler.compile("{ prefix: 1, prefix: 2, pools: { foo: { servers: [] } } }"))
+            .isInstanceOf(StreamReadException.class)
+            .hasMessageContaining("Duplicate field 'prefix'");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: { hash: \"crc32\", hash: \"ketama\", servers: [] } } }"))
+            .isInstanceOf(StreamReadException.class)
+            .hasMessageContaining("Duplicate field 'hash'");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: { servers: [] }, foo: { servers: [] } } }"))
+            .isInstanceOf(StreamReadException.class)
+            .hasMessageContaining("Duplicate field 'foo'");
+        assertThatThrownBy(() -> compiler.compile("{ pools: { foo: { servers: [], servers: [\"foo:1234\"] } } }"))
+            .isInstanceOf(StreamReadException.class)
+            .hasMessageContaining("Duplicate field 'servers'");
+    }
+
+    private TemplateCompiler compiler(RenderMode mode) {
+        return new TemplateCompiler(objectMapper, tokenizer, renderProperties().mode(mode).build());
+    }
+
+}
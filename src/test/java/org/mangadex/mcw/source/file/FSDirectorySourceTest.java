@@ -0,0 +1,49 @@
+package org.mangadex.mcw.source.file;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.mangadex.mcw.lifecycle.dsn.Dsn;
+
+class FSDirectorySourceTest {
+
+    private static final Duration PERIOD = Duration.ofSeconds(10L);
+    private static final Duration MAX_PERIOD = Duration.ofMinutes(1L);
+
+    @Test
+    void detectsDirectories(@TempDir Path path) {
+        assertThat(FSDirectorySource.isDirectory(Dsn.parse("file://" + path.toAbsolutePath() + "/"))).isTrue();
+        assertThat(FSDirectorySource.isDirectory(Dsn.parse("file://" + path.toAbsolutePath() + "?glob=*.json"))).isTrue();
+        assertThat(FSDirectorySource.isDirectory(Dsn.parse("file://" + path.toAbsolutePath() + "/template.json"))).isFalse();
+    }
+
+    @Test
+    void parsesWithDefaultGlob(@TempDir Path path) {
+        var parsed = FSDirectorySource.parse(Dsn.parse("file://" + path.toAbsolutePath() + "/"), PERIOD, FSWatchMode.EVENTS, MAX_PERIOD);
+        assertThat(parsed.directory()).isEqualTo(path);
+        assertThat(parsed.glob()).isEqualTo(FSDirectorySource.DEFAULT_GLOB);
+        assertThat(parsed.period()).isEqualTo(PERIOD);
+        assertThat(parsed.mode()).isEqualTo(FSWatchMode.EVENTS);
+        assertThat(parsed.maxPeriod()).isEqualTo(MAX_PERIOD);
+    }
+
+    @Test
+    void parsesWithGlobAndOptions(@TempDir Path path) {
+        var parsed = FSDirectorySource.parse(
+            Dsn.parse("file://" + path.toAbsolutePath() + "/?glob=*.json&period=1s&mode=poll"),
+            PERIOD,
+            FSWatchMode.EVENTS,
+            MAX_PERIOD
+        );
+        assertThat(parsed.directory()).isEqualTo(path);
+        assertThat(parsed.glob()).isEqualTo("*.json");
+        assertThat(parsed.period()).isEqualTo(Duration.ofSeconds(1L));
+        assertThat(parsed.mode()).isEqualTo(FSWatchMode.POLL);
+    }
+
+}
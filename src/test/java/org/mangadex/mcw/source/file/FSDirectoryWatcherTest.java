@@ -0,0 +1,103 @@
+package org.mangadex.mcw.source.file;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+
+@SpringBootTest(classes = { FSDirectoryWatcher.class, FSEvents.class, WatchScheduler.class })
+class FSDirectoryWatcherTest {
+
+    @Autowired
+    private FSDirectoryWatcher watcher;
+
+    @TempDir
+    private Path dir;
+
+    @ParameterizedTest
+    @EnumSource(FSWatchMode.class)
+    void reportsAddedChangedAndRemovedTemplates(FSWatchMode mode) throws IOException {
+        var source = new FSDirectorySource(dir, "*.json", Duration.ofMillis(100L), mode, Duration.ofMillis(100L));
+        var listener = new RecordingListener();
+
+        Files.writeString(dir.resolve("a.json"), "a1");
+        Files.writeString(dir.resolve("ignored.txt"), "ignored");
+        Files.createDirectory(dir.resolve("..2026_10_17_00_00_00.1"));
+        Files.writeString(dir.resolve("..2026_10_17_00_00_00.1/hidden.json"), "hidden");
+        watcher.addWatch(source, listener);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> listener.templates.containsKey(dir.resolve("a.json")));
+
+        Files.writeString(dir.resolve("b.json"), "b1");
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> "b1".equals(listener.templates.get(dir.resolve("b.json"))));
+
+        Files.writeString(dir.resolve("a.json"), "a2");
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> "a2".equals(listener.templates.get(dir.resolve("a.json"))));
+
+        Files.delete(dir.resolve("b.json"));
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> listener.removed.contains(dir.resolve("b.json")));
+
+        assertThat(listener.templates).containsOnlyKeys(dir.resolve("a.json"));
+        assertThat(listener.removed).containsExactly(dir.resolve("b.json"));
+
+        watcher.removeWatch(source);
+        assertThat(watcher.getSources()).doesNotContain(source);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FSWatchMode.class)
+    void watchesHundredsOfTemplates(FSWatchMode mode) throws IOException {
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            Files.writeString(dir.resolve("template-" + i + ".json"), "v1-" + i);
+        }
+
+        var source = new FSDirectorySource(dir, "*.json", Duration.ofMillis(100L), mode, Duration.ofMillis(100L));
+        var listener = new RecordingListener();
+        watcher.addWatch(source, listener);
+        await().pollInterval(10, MILLISECONDS).atMost(5, SECONDS).until(() -> listener.templates.size() == count);
+
+        for (int i = 0; i < count; i += 10) {
+            Files.writeString(dir.resolve("template-" + i + ".json"), "v2-" + i);
+        }
+        await().pollInterval(10, MILLISECONDS).atMost(5, SECONDS).until(
+            () -> listener.templates.values().stream().filter(content -> content.startsWith("v2-")).count() == count / 10
+        );
+
+        watcher.removeWatch(source);
+    }
+
+    private static final class RecordingListener implements FSDirectoryListener {
+
+        private final Map<Path, String> templates = new ConcurrentHashMap<>();
+        private final Set<Path> removed = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void templateChanged(Path template, String content) {
+            templates.put(template, content);
+        }
+
+        @Override
+        public void templateRemoved(Path template) {
+            templates.remove(template);
+            removed.add(template);
+        }
+
+    }
+
+}
@@ -9,6 +9,8 @@ import java.time.Duration;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import org.mangadex.mcw.lifecycle.dsn.Dsn;
+
 class FSSourceTest {
 
     @Test
@@ -48,4 +50,41 @@ class FSSourceTest {
         assertThat(parsed.period()).isEqualTo(Duration.ofSeconds(42L));
     }
 
+    @Test
+    void parsesWithDefaultMode(@TempDir Path path) {
+        var period = Duration.ofSeconds(42L);
+        var parsed = FSSource.parse(Dsn.parse("file://" + path.toAbsolutePath()), period, FSWatchMode.EVENTS, period);
+        assertThat(parsed.mode()).isEqualTo(FSWatchMode.EVENTS);
+        assertThat(FSSource.parse("file://" + path.toAbsolutePath(), Duration.ofSeconds(42L)).mode()).isEqualTo(FSWatchMode.POLL);
+    }
+
+    @Test
+    void parsesWithMode(@TempDir Path path) {
+        var period = Duration.ofSeconds(42L);
+        var parsed = FSSource.parse(Dsn.parse("file://" + path.toAbsolutePath() + "?mode=events"), period, FSWatchMode.POLL, period);
+        assertThat(parsed.path()).isEqualTo(path);
+        assertThat(parsed.mode()).isEqualTo(FSWatchMode.EVENTS);
+    }
+
+    @Test
+    void parsesWithMaxPeriod(@TempDir Path path) {
+        var parsed = FSSource.parse(
+            Dsn.parse("file://" + path.toAbsolutePath() + "?max-period=5m"),
+            Duration.ofSeconds(10L),
+            FSWatchMode.POLL,
+            Duration.ofMinutes(1L)
+        );
+        assertThat(parsed.period()).isEqualTo(Duration.ofSeconds(10L));
+        assertThat(parsed.maxPeriod()).isEqualTo(Duration.ofMinutes(5L));
+
+        // never backs off to less than its period
+        var defaulted = FSSource.parse(
+            Dsn.parse("file://" + path.toAbsolutePath() + "?period=1h"),
+            Duration.ofSeconds(10L),
+            FSWatchMode.POLL,
+            Duration.ofMinutes(1L)
+        );
+        assertThat(defaulted.maxPeriod()).isEqualTo(Duration.ofHours(1L));
+    }
+
 }
@@ -1,11 +1,17 @@
 package org.mangadex.mcw.source.file;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -14,13 +20,16 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest(classes = FSWatcher.class)
+import org.mangadex.mcw.lifecycle.scheduling.WatchScheduler;
+
+@SpringBootTest(classes = { FSWatcher.class, FSEvents.class, WatchScheduler.class })
 class FSWatcherTest {
 
     @Autowired
@@ -65,4 +74,123 @@ class FSWatcherTest {
         watcher.removeWatch(watchSource);
     }
 
+    @Test
+    public void eventWatchPicksUpChangesBeforeItsPeriod() throws IOException {
+        var watched = Files.createTempFile(dir, "test-", ".conf");
+        var watchSource = new FSSource(watched.toAbsolutePath(), Duration.ofHours(1L), FSWatchMode.EVENTS, Duration.ofHours(1L));
+
+        List<String> templatesSeen = new CopyOnWriteArrayList<>();
+        Files.writeString(watched, "Conf1", TRUNCATE_EXISTING);
+        watcher.addWatch(watchSource, templatesSeen::add);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 1L);
+
+        Files.writeString(watched, "Conf2", TRUNCATE_EXISTING);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 2L);
+
+        Files.delete(watched);
+        Files.writeString(watched, "Conf3", CREATE_NEW);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 3L);
+
+        assertThat(templatesSeen).containsExactly("Conf1", "Conf2", "Conf3");
+
+        watcher.removeWatch(watchSource);
+    }
+
+    /**
+     * Mimics how the kubelet updates ConfigMap volumes, see: kubernetes/pkg/volume/util/atomic_writer.go
+     */
+    @Test
+    public void eventWatchPicksUpConfigMapSymlinkSwaps() throws IOException {
+        Files.createDirectory(dir.resolve("..2026_10_17_00_00_00.1"));
+        Files.writeString(dir.resolve("..2026_10_17_00_00_00.1/template.json"), "Conf1");
+        Files.createSymbolicLink(dir.resolve("..data"), Path.of("..2026_10_17_00_00_00.1"));
+        Files.createSymbolicLink(dir.resolve("template.json"), Path.of("..data/template.json"));
+
+        var template = dir.resolve("template.json").toAbsolutePath();
+        var watchSource = new FSSource(template, Duration.ofHours(1L), FSWatchMode.EVENTS, Duration.ofHours(1L));
+        List<String> templatesSeen = new CopyOnWriteArrayList<>();
+        watcher.addWatch(watchSource, templatesSeen::add);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 1L);
+
+        Files.createDirectory(dir.resolve("..2026_10_17_00_01_00.2"));
+        Files.writeString(dir.resolve("..2026_10_17_00_01_00.2/template.json"), "Conf2");
+        Files.createSymbolicLink(dir.resolve("..data_tmp"), Path.of("..2026_10_17_00_01_00.2"));
+        Files.move(dir.resolve("..data_tmp"), dir.resolve("..data"), ATOMIC_MOVE, REPLACE_EXISTING);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 2L);
+
+        assertThat(templatesSeen).containsExactly("Conf1", "Conf2");
+
+        watcher.removeWatch(watchSource);
+    }
+
+    @Test
+    public void eventWatchFallsBackToPeriodicChecksOfMetadata() throws IOException {
+        var watched = Files.createTempFile(dir, "test-", ".conf");
+        var watchSource = new FSSource(watched.toAbsolutePath(), Duration.ofMillis(100L), FSWatchMode.EVENTS, Duration.ofMillis(100L));
+
+        List<String> templatesSeen = new CopyOnWriteArrayList<>();
+        Files.writeString(watched, "Conf1", TRUNCATE_EXISTING);
+        // never delivers any event
+        var events = mock(FSEvents.class);
+        try (var scheduler = new WatchScheduler()) {
+            var watch = new FSWatch(scheduler, events, watchSource, templatesSeen::add);
+            watch.start();
+            verify(events).register(watch);
+            await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 1L);
+
+            Files.writeString(watched, "Conf2-longer", TRUNCATE_EXISTING);
+            await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 2L);
+            assertThat(templatesSeen).containsExactly("Conf1", "Conf2-longer");
+            watch.shutdown();
+        }
+    }
+
+    @Test
+    public void eventWatchWhichCannotBeWatchedDoesNotBackOff() throws IOException {
+        var watched = Files.createTempFile(dir, "test-", ".conf");
+        var watchSource = new FSSource(watched.toAbsolutePath(), Duration.ofMillis(50L), FSWatchMode.EVENTS, Duration.ofHours(1L));
+
+        List<String> templatesSeen = new CopyOnWriteArrayList<>();
+        Files.writeString(watched, "Conf1", TRUNCATE_EXISTING);
+        var events = mock(FSEvents.class);
+        when(events.register(any())).thenReturn(false);
+        try (var scheduler = new WatchScheduler()) {
+            var watch = new FSWatch(scheduler, events, watchSource, templatesSeen::add);
+            watch.start();
+            await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 1L);
+
+            // stable for long enough that backing off would have pushed the next check out by seconds
+            await().pollDelay(2, SECONDS).until(() -> true);
+            Files.writeString(watched, "Conf2-longer", TRUNCATE_EXISTING);
+            await().pollInterval(10, MILLISECONDS).atMost(500, MILLISECONDS).until(() -> templatesSeen.size() == 2L);
+            watch.shutdown();
+        }
+    }
+
+    @Test
+    public void pollingWatchReadsRewritesWhichKeepTheSameMetadata() throws IOException {
+        var watched = Files.createTempFile(dir, "test-", ".conf");
+        var watchSource = new FSSource(watched.toAbsolutePath(), Duration.ofMillis(50L), FSWatchMode.POLL, Duration.ofMillis(400L));
+
+        List<String> templatesSeen = new CopyOnWriteArrayList<>();
+        Files.writeString(watched, "Conf1", TRUNCATE_EXISTING);
+        var lastModified = Files.getLastModifiedTime(watched);
+        watcher.addWatch(watchSource, templatesSeen::add);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 1L);
+
+        // as happens on filesystems with coarse timestamps
+        Files.writeString(watched, "Conf2", TRUNCATE_EXISTING);
+        Files.setLastModifiedTime(watched, lastModified);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 2L);
+
+        // once backed off to its max period
+        await().pollDelay(1, SECONDS).until(() -> true);
+        Files.writeString(watched, "Conf3", TRUNCATE_EXISTING);
+        await().pollInterval(10, MILLISECONDS).atMost(3, SECONDS).until(() -> templatesSeen.size() == 3L);
+
+        assertThat(templatesSeen).containsExactly("Conf1", "Conf2", "Conf3");
+
+        watcher.removeWatch(watchSource);
+    }
+
 }